@@ -0,0 +1,199 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.imc.mirror.sdk.DataObjectFilter;
+import de.imc.mirror.sdk.android.data.DataTable;
+
+/**
+ * Query for data objects stored in the local cache.
+ * Filters are translated into a SQL selection on the metadata columns of the data table.
+ * Filters which cannot be expressed exactly, e.g., regular expressions, are translated into a less restrictive selection.
+ * In this case, the data objects selected have to be validated with the filters afterwards, see {@link #isExact()}.
+ */
+class CacheQuery {
+	private static final Clause TRUE = new Clause("1", true);
+	private static final Clause FALSE = new Clause("0", true);
+
+	/**
+	 * Part of the SQL selection.
+	 */
+	private static class Clause {
+		final String sql;
+		final List<String> args;
+		final boolean isExact;
+
+		Clause(String sql, boolean isExact, String... args) {
+			this.sql = sql;
+			this.isExact = isExact;
+			this.args = new ArrayList<String>(args.length);
+			for (String arg : args) {
+				this.args.add(arg);
+			}
+		}
+
+		Clause(String sql, List<String> args, boolean isExact) {
+			this.sql = sql;
+			this.args = args;
+			this.isExact = isExact;
+		}
+	}
+
+	private final String selection;
+	private final String[] selectionArgs;
+	private final boolean isExact;
+
+	/**
+	 * Creates a query.
+	 * @param nodeIds Identifiers of the pubsub nodes to select data objects from. If <code>null</code>, data objects from all nodes are selected.
+	 * @param objectIds Identifiers of the data objects to select. If <code>null</code>, all data objects are selected.
+	 * @param filters Filters the data objects have to pass. May be empty.
+	 */
+	CacheQuery(Collection<String> nodeIds, Collection<String> objectIds, Collection<? extends DataObjectFilter> filters) {
+		List<Clause> clauses = new ArrayList<Clause>();
+		if (nodeIds != null) {
+			clauses.add(in(DataTable.DATA_NODE, nodeIds));
+		}
+		if (objectIds != null) {
+			clauses.add(in(DataTable.DATA_OBJECT_ID, objectIds));
+		}
+		for (DataObjectFilter filter : filters) {
+			clauses.add(translate(filter));
+		}
+		Clause selectionClause = join(clauses, " AND ", TRUE);
+		this.selection = selectionClause.sql;
+		this.selectionArgs = selectionClause.args.toArray(new String[selectionClause.args.size()]);
+		this.isExact = selectionClause.isExact;
+	}
+
+	/**
+	 * Returns the SQL selection, i.e., the WHERE clause without the keyword.
+	 * @return Selection string with placeholders for the arguments.
+	 */
+	String getSelection() {
+		return selection;
+	}
+
+	/**
+	 * Returns the arguments for the placeholders of the selection.
+	 * @return Array of arguments. May be empty.
+	 */
+	String[] getSelectionArgs() {
+		return selectionArgs;
+	}
+
+	/**
+	 * Checks if the selection is equivalent to the filters.
+	 * @return <code>true</code> if the selection returns exactly the data objects passing the filters,
+	 * <code>false</code> if the result of the selection has to be validated with the filters.
+	 */
+	boolean isExact() {
+		return isExact;
+	}
+
+	private static Clause in(String column, Collection<String> values) {
+		if (values.isEmpty()) {
+			return FALSE;
+		}
+		StringBuilder builder = new StringBuilder(column).append(" IN (");
+		List<String> args = new ArrayList<String>(values.size());
+		for (String value : values) {
+			builder.append(args.isEmpty() ? "?" : ",?");
+			args.add(value);
+		}
+		builder.append(")");
+		return new Clause(builder.toString(), args, true);
+	}
+
+	private static Clause join(List<Clause> clauses, String operator, Clause emptyClause) {
+		if (clauses.isEmpty()) {
+			return emptyClause;
+		} else if (clauses.size() == 1) {
+			return clauses.get(0);
+		}
+		StringBuilder builder = new StringBuilder();
+		List<String> args = new ArrayList<String>();
+		boolean isExact = true;
+		for (Clause clause : clauses) {
+			if (builder.length() > 0) {
+				builder.append(operator);
+			}
+			builder.append("(").append(clause.sql).append(")");
+			args.addAll(clause.args);
+			isExact &= clause.isExact;
+		}
+		return new Clause(builder.toString(), args, isExact);
+	}
+
+	private static Clause translate(DataObjectFilter filter) {
+		if (filter instanceof de.imc.mirror.sdk.filter.AndFilter) {
+			List<Clause> clauses = new ArrayList<Clause>();
+			for (DataObjectFilter childFilter : ((de.imc.mirror.sdk.filter.AndFilter) filter).getFilters()) {
+				clauses.add(translate(childFilter));
+			}
+			return join(clauses, " AND ", TRUE);
+		} else if (filter instanceof de.imc.mirror.sdk.filter.OrFilter) {
+			List<Clause> clauses = new ArrayList<Clause>();
+			for (DataObjectFilter childFilter : ((de.imc.mirror.sdk.filter.OrFilter) filter).getFilters()) {
+				clauses.add(translate(childFilter));
+			}
+			return join(clauses, " OR ", FALSE);
+		} else if (filter instanceof de.imc.mirror.sdk.filter.NamespaceFilter) {
+			de.imc.mirror.sdk.filter.NamespaceFilter namespaceFilter = (de.imc.mirror.sdk.filter.NamespaceFilter) filter;
+			switch (namespaceFilter.getCompareType()) {
+			case STRICT:
+				return new Clause(DataTable.DATA_NAMESPACE + "=?", true, namespaceFilter.getCompareString());
+			case CONTAINS:
+				return new Clause(DataTable.DATA_NAMESPACE + " GLOB ?", true, "*" + escapeGlob(namespaceFilter.getCompareString()) + "*");
+			default:
+				// regular expressions are not supported by SQLite
+				return new Clause("1", false);
+			}
+		} else if (filter instanceof de.imc.mirror.sdk.filter.PublisherFilter) {
+			String publisher = ((de.imc.mirror.sdk.filter.PublisherFilter) filter).getPublisher();
+			return new Clause(DataTable.DATA_PUBLISHER + " GLOB ?", true, escapeGlob(publisher) + "*");
+		} else if (filter instanceof de.imc.mirror.sdk.filter.ReferencesFilter) {
+			return new Clause(DataTable.DATA_REF + "=?", true, ((de.imc.mirror.sdk.filter.ReferencesFilter) filter).getReferenceId());
+		} else if (filter instanceof de.imc.mirror.sdk.filter.DataModelFilter) {
+			de.imc.mirror.sdk.filter.DataModelFilter dataModelFilter = (de.imc.mirror.sdk.filter.DataModelFilter) filter;
+			if (dataModelFilter.getVersion() == null) {
+				return new Clause(DataTable.DATA_NAMESPACE + "=?", true, dataModelFilter.getNamespace());
+			} else {
+				// the model version is only valid if the CDM information is valid
+				return new Clause(DataTable.DATA_NAMESPACE + "=? AND " + DataTable.DATA_MODEL_VERSION + "=?", false, dataModelFilter.getNamespace(), dataModelFilter.getVersion());
+			}
+		} else if (filter instanceof de.imc.mirror.sdk.filter.PeriodFilter) {
+			de.imc.mirror.sdk.filter.PeriodFilter periodFilter = (de.imc.mirror.sdk.filter.PeriodFilter) filter;
+			StringBuilder builder = new StringBuilder(DataTable.DATA_TIMESTAMP).append(" IS NOT NULL");
+			if (periodFilter.getFrom() != null) {
+				builder.append(" AND ").append(DataTable.DATA_TIMESTAMP).append(">=").append(periodFilter.getFrom().getTime());
+			}
+			if (periodFilter.getTo() != null) {
+				builder.append(" AND ").append(DataTable.DATA_TIMESTAMP).append("<=").append(periodFilter.getTo().getTime());
+			}
+			return new Clause(builder.toString(), true);
+		} else {
+			return new Clause("1", false);
+		}
+	}
+
+	/**
+	 * Escapes the wildcard characters of a GLOB pattern.
+	 * @param value String to escape.
+	 * @return String matching the given one literally.
+	 */
+	private static String escapeGlob(String value) {
+		StringBuilder builder = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '*' || c == '?' || c == '[') {
+				builder.append('[').append(c).append(']');
+			} else {
+				builder.append(c);
+			}
+		}
+		return builder.toString();
+	}
+}
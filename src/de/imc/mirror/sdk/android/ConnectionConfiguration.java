@@ -14,9 +14,17 @@ public class ConnectionConfiguration implements
 	private String applicationID;
 	private boolean isSecureConnection;
 	private boolean selfSignedCertificateEnabled;
+	private int publishWindowSize;
+	private int itemsPerPublishRequest;
+	private boolean outboxCoalescingEnabled;
+	private double publishRateLimit;
+	private int maxPendingPublishRequests;
+	private PublishOverflowPolicy publishOverflowPolicy;
 
 	protected ConnectionConfiguration(String domain, String host, int port, int timeout,
-							String applicationID, boolean isSecureConnection, boolean selfSigned){
+							String applicationID, boolean isSecureConnection, boolean selfSigned,
+							int publishWindowSize, int itemsPerPublishRequest, boolean outboxCoalescingEnabled,
+							double publishRateLimit, int maxPendingPublishRequests, PublishOverflowPolicy publishOverflowPolicy){
 		this.domain = domain;
 		this.host = host;
 		this.port = port;
@@ -24,6 +32,12 @@ public class ConnectionConfiguration implements
 		this.applicationID = applicationID;
 		this.isSecureConnection = isSecureConnection;
 		this.selfSignedCertificateEnabled = selfSigned;
+		this.publishWindowSize = publishWindowSize;
+		this.itemsPerPublishRequest = itemsPerPublishRequest;
+		this.outboxCoalescingEnabled = outboxCoalescingEnabled;
+		this.publishRateLimit = publishRateLimit;
+		this.maxPendingPublishRequests = maxPendingPublishRequests;
+		this.publishOverflowPolicy = publishOverflowPolicy;
 	}
 	
 	/**
@@ -96,4 +110,59 @@ public class ConnectionConfiguration implements
 		return timeout;
 	}
 
+	/**
+	 * Returns the maximum number of publishing requests which may be sent without having received a response.
+	 * Applies to bulk publishing. Defaults to 10.
+	 * @return Maximum number of outstanding publishing requests.
+	 */
+	public int getPublishWindowSize() {
+		return publishWindowSize;
+	}
+
+	/**
+	 * Returns the maximum number of pubsub items sent with a single publishing request.
+	 * Applies to bulk publishing. Defaults to 1, as not all pubsub services accept multiple items per request.
+	 * @return Maximum number of items per publishing request.
+	 */
+	public int getItemsPerPublishRequest() {
+		return itemsPerPublishRequest;
+	}
+
+	/**
+	 * Checks if data objects queued while offline are coalesced.
+	 * If enabled, a queued data object is discarded when a newer one with the same custom identifier, or updating the same object, is queued for the same space.
+	 * Defaults to <code>false</code>.
+	 * @return <code>true</code> if queued data objects are coalesced, otherwise <code>false</code>.
+	 */
+	public boolean isOutboxCoalescingEnabled() {
+		return outboxCoalescingEnabled;
+	}
+
+	/**
+	 * Returns the maximum number of publishing requests sent per second.
+	 * Defaults to 0, i.e., the rate is not limited.
+	 * @return Maximum number of publishing requests per second or <code>0</code> if not limited.
+	 */
+	public double getPublishRateLimit() {
+		return publishRateLimit;
+	}
+
+	/**
+	 * Returns the maximum number of publishing requests which may wait for a response at the same time.
+	 * Defaults to 0, i.e., the number is not limited.
+	 * @return Maximum number of pending publishing requests or <code>0</code> if not limited.
+	 */
+	public int getMaxPendingPublishRequests() {
+		return maxPendingPublishRequests;
+	}
+
+	/**
+	 * Returns the behavior when a data object is published while the publishing capacity is exhausted.
+	 * Defaults to {@link PublishOverflowPolicy#BLOCK}.
+	 * @return Overflow policy.
+	 */
+	public PublishOverflowPolicy getPublishOverflowPolicy() {
+		return publishOverflowPolicy;
+	}
+
 }
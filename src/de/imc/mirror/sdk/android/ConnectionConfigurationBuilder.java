@@ -10,6 +10,12 @@ public class ConnectionConfigurationBuilder {
 	private static final boolean DEFAULT_SECURE_CONNECTION = true;
 	private static final boolean DEFAULT_ALLOW_SELFSIGNED_CERTS = true;
 	private static final int DEFAULT_TIMEOUT = 2000;
+	private static final int DEFAULT_PUBLISH_WINDOW_SIZE = 10;
+	private static final int DEFAULT_ITEMS_PER_PUBLISH_REQUEST = 1;
+	private static final boolean DEFAULT_OUTBOX_COALESCING = false;
+	private static final double DEFAULT_PUBLISH_RATE_LIMIT = 0;
+	private static final int DEFAULT_MAX_PENDING_PUBLISH_REQUESTS = 0;
+	private static final PublishOverflowPolicy DEFAULT_PUBLISH_OVERFLOW_POLICY = PublishOverflowPolicy.BLOCK;
 	
 	private String domain;
 	private String host;
@@ -18,6 +24,12 @@ public class ConnectionConfigurationBuilder {
 	private String applicationID;
 	private boolean isSecureConnection;
 	private boolean selfSignedCertificateEnabled;
+	private int publishWindowSize;
+	private int itemsPerPublishRequest;
+	private boolean outboxCoalescingEnabled;
+	private double publishRateLimit;
+	private int maxPendingPublishRequests;
+	private PublishOverflowPolicy publishOverflowPolicy;
 	
 	/**
 	 * Creates the builder with default values.
@@ -29,6 +41,12 @@ public class ConnectionConfigurationBuilder {
 		isSecureConnection = DEFAULT_SECURE_CONNECTION;
 		selfSignedCertificateEnabled = DEFAULT_ALLOW_SELFSIGNED_CERTS;
 		timeout = DEFAULT_TIMEOUT;
+		publishWindowSize = DEFAULT_PUBLISH_WINDOW_SIZE;
+		itemsPerPublishRequest = DEFAULT_ITEMS_PER_PUBLISH_REQUEST;
+		outboxCoalescingEnabled = DEFAULT_OUTBOX_COALESCING;
+		publishRateLimit = DEFAULT_PUBLISH_RATE_LIMIT;
+		maxPendingPublishRequests = DEFAULT_MAX_PENDING_PUBLISH_REQUESTS;
+		publishOverflowPolicy = DEFAULT_PUBLISH_OVERFLOW_POLICY;
 		this.domain = domain;
 		this.applicationID = applicationID;
 	}
@@ -107,6 +125,89 @@ public class ConnectionConfigurationBuilder {
 		return this;
 	}
 	
+	/**
+	 * Sets the maximum number of publishing requests which may be sent without having received a response.
+	 * If not set, up to 10 requests are pipelined when publishing multiple data objects at once.
+	 * @param publishWindowSize Maximum number of outstanding publishing requests. Must be greater than zero.
+	 * @return Builder instance.
+	 */
+	public ConnectionConfigurationBuilder setPublishWindowSize(int publishWindowSize) {
+		if (publishWindowSize < 1) {
+			throw new IllegalArgumentException("The publish window size has to be greater than zero.");
+		}
+		this.publishWindowSize = publishWindowSize;
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum number of pubsub items sent with a single publishing request.
+	 * Only increase this value if the pubsub service accepts multiple items per publishing request.
+	 * If not set, each data object is published with a separate request.
+	 * @param itemsPerPublishRequest Maximum number of items per publishing request. Must be greater than zero.
+	 * @return Builder instance.
+	 */
+	public ConnectionConfigurationBuilder setItemsPerPublishRequest(int itemsPerPublishRequest) {
+		if (itemsPerPublishRequest < 1) {
+			throw new IllegalArgumentException("The number of items per publishing request has to be greater than zero.");
+		}
+		this.itemsPerPublishRequest = itemsPerPublishRequest;
+		return this;
+	}
+	
+	/**
+	 * Specifies if data objects queued while offline should be coalesced.
+	 * If enabled, a queued data object is discarded when a newer one with the same custom identifier, or updating the same object, is queued for the same space.
+	 * Only enable coalescing if each update contains the complete state of the object.
+	 * @param isEnabled <code>true</code> to coalesce queued data objects, otherwise <code>false</code>.
+	 * @return Builder instance.
+	 */
+	public ConnectionConfigurationBuilder setOutboxCoalescingEnabled(boolean isEnabled) {
+		this.outboxCoalescingEnabled = isEnabled;
+		return this;
+	}
+	
+	/**
+	 * Limits the number of publishing requests sent per second.
+	 * If not set, the rate is not limited.
+	 * @param requestsPerSecond Maximum number of publishing requests per second. <code>0</code> disables the limit.
+	 * @return Builder instance.
+	 */
+	public ConnectionConfigurationBuilder setPublishRateLimit(double requestsPerSecond) {
+		if (requestsPerSecond < 0) {
+			throw new IllegalArgumentException("The publish rate limit must not be negative.");
+		}
+		this.publishRateLimit = requestsPerSecond;
+		return this;
+	}
+	
+	/**
+	 * Limits the number of publishing requests which may wait for a response at the same time.
+	 * If not set, the number is not limited.
+	 * @param maxPendingPublishRequests Maximum number of pending publishing requests. <code>0</code> disables the limit.
+	 * @return Builder instance.
+	 */
+	public ConnectionConfigurationBuilder setMaxPendingPublishRequests(int maxPendingPublishRequests) {
+		if (maxPendingPublishRequests < 0) {
+			throw new IllegalArgumentException("The maximum number of pending publishing requests must not be negative.");
+		}
+		this.maxPendingPublishRequests = maxPendingPublishRequests;
+		return this;
+	}
+	
+	/**
+	 * Sets the behavior when a data object is published while the publishing capacity is exhausted.
+	 * If not set, the publishing thread is blocked until capacity is available.
+	 * @param policy Overflow policy to apply.
+	 * @return Builder instance.
+	 */
+	public ConnectionConfigurationBuilder setPublishOverflowPolicy(PublishOverflowPolicy policy) {
+		if (policy == null) {
+			throw new IllegalArgumentException("The overflow policy must not be null.");
+		}
+		this.publishOverflowPolicy = policy;
+		return this;
+	}
+	
 	/**
 	 * Builds an connection configuration object based on the given settings.
 	 * @return Connection configuration object.
@@ -125,7 +226,9 @@ public class ConnectionConfigurationBuilder {
 		} else if (!isHostSet && isDomainSet){
 			host = domain;
 		}
-		return new ConnectionConfiguration(domain, host, port, timeout, applicationID, isSecureConnection, selfSignedCertificateEnabled);
+		return new ConnectionConfiguration(domain, host, port, timeout, applicationID, isSecureConnection, selfSignedCertificateEnabled,
+				publishWindowSize, itemsPerPublishRequest, outboxCoalescingEnabled,
+				publishRateLimit, maxPendingPublishRequests, publishOverflowPolicy);
 	}
 
 }
@@ -3,13 +3,20 @@ package de.imc.mirror.sdk.android;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -18,7 +25,6 @@ import org.jdom2.Element;
 import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
 import org.jdom2.output.XMLOutputter;
-import org.jivesoftware.smack.PacketInterceptor;
 import org.jivesoftware.smack.PacketListener;
 import org.jivesoftware.smack.XMPPConnection;
 import org.jivesoftware.smack.XMPPException;
@@ -26,6 +32,7 @@ import org.jivesoftware.smack.filter.PacketFilter;
 import org.jivesoftware.smack.packet.IQ;
 import org.jivesoftware.smack.packet.Packet;
 import org.jivesoftware.smack.packet.XMPPError;
+import org.jivesoftware.smackx.pubsub.Item;
 import org.jivesoftware.smackx.pubsub.ItemPublishEvent;
 import org.jivesoftware.smackx.pubsub.ItemsExtension;
 import org.jivesoftware.smackx.pubsub.LeafNode;
@@ -33,6 +40,7 @@ import org.jivesoftware.smackx.pubsub.Node;
 import org.jivesoftware.smackx.pubsub.PayloadItem;
 import org.jivesoftware.smackx.pubsub.PubSubElementType;
 import org.jivesoftware.smackx.pubsub.PubSubManager;
+import org.jivesoftware.smackx.pubsub.PublishItem;
 import org.jivesoftware.smackx.pubsub.SimplePayload;
 import org.jivesoftware.smackx.pubsub.Subscription;
 import org.jivesoftware.smackx.pubsub.listener.ItemEventListener;
@@ -53,14 +61,15 @@ import de.imc.mirror.sdk.config.NamespaceConfig;
 import de.imc.mirror.sdk.exceptions.ConnectionStatusException;
 import de.imc.mirror.sdk.exceptions.InvalidDataException;
 import de.imc.mirror.sdk.exceptions.QueryException;
-import de.imc.mirror.sdk.exceptions.SpaceManagementException;
-import de.imc.mirror.sdk.exceptions.SpaceManagementException.Type;
 import de.imc.mirror.sdk.exceptions.UnknownEntityException;
 import de.imc.mirror.sdk.android.exceptions.RequestException;
+import de.imc.mirror.sdk.android.filter.FilterCompiler;
 import de.imc.mirror.sdk.android.packet.DeleteRequestIQ;
 import de.imc.mirror.sdk.android.packet.DeleteResponseIQ;
+import de.imc.mirror.sdk.android.packet.ElementPayload;
 import de.imc.mirror.sdk.android.packet.QueryRequestIQ;
 import de.imc.mirror.sdk.android.packet.QueryResponseIQ;
+import de.imc.mirror.sdk.android.utils.DaemonThreadFactory;
 
 
 /**
@@ -72,30 +81,67 @@ import de.imc.mirror.sdk.android.packet.QueryResponseIQ;
  *
  */
 public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHandler, ItemEventListener<PayloadItem<SimplePayload>> {
+	/**
+	 * Number of data objects queued for a listener if no capacity is specified.
+	 */
+	public static final int DEFAULT_LISTENER_QUEUE_CAPACITY = 1000;
+	private static final int CACHE_BATCH_SIZE = 50;
+	private static final long CACHE_FLUSH_DELAY = 200l;
+	private static final int SEEN_ITEMS_LRU_CAPACITY = 1000;
+	private static final int SEEN_ITEMS_MIN_EXPECTED = 10000;
+	
+	/**
+	 * Request for the payloads of items which were published without payload.
+	 */
+	private static class PayloadRequest {
+		final String nodeId;
+		final List<String> itemIds;
+		
+		PayloadRequest(String nodeId, List<String> itemIds) {
+			this.nodeId = nodeId;
+			this.itemIds = itemIds;
+		}
+	}
 	
 	private int timeout = 2000;
+	private int publishWindowSize = 10;
+	private int itemsPerPublishRequest = 1;
+	private boolean isOutboxCoalescingEnabled = false;
+	private PublishThrottle publishThrottle;
 	private ConnectionHandler connectionHandler;
 	private XMPPConnection connection;
 	private ConnectionStatusListener connectionStatusListener;
 	private boolean isConnectionResetted;
 	private SpaceHandler spaceHandler;
 	private de.imc.mirror.sdk.UserInfo userInfo;
-	private List<DataObjectListener> listeners;
+	private ConcurrentMap<DataObjectListener, DataObjectDispatcher> listenerDispatchers;
+	private ListenerRouter listenerRouter;
+	private ConcurrentMap<DataObjectBatchListener, DataObjectBatchDispatcher> batchListenerDispatchers;
 	private DataWrapper datawrapper;
-	private List<Space> handledSpaces;
+	private DataObjectCacheWriter cacheWriter;
+	private SeenItemFilter seenItemFilter;
+	private Map<String, Space> handledSpaces; // <lower case space id, space>
+	private SpaceDirectory spaceDirectory;
 	private Mode userWantedMode;
 	private Mode realMode;
 	
 	private de.imc.mirror.sdk.DataObjectFilter dataObjectFilter;
+	private volatile de.imc.mirror.sdk.DataObjectFilter compiledDataObjectFilter;
 	
 
 	private Map<String, RequestFuture<IQ>> pendingPersistenceServiceQueries;
-	private Map<String, RequestFuture<List<PayloadItem<SimplePayload>>>> pendingPayloadRequests;
-	private Map<String, RequestFuture<IQ>> pendingPublishingRequests; // <pubsub item id, request>
-	private Map<String, String> publishIdMap; // <iq packet id, pubsub item id>
+	private Map<String, PayloadRequest> pendingPayloadRequests; // <iq packet id, request>
+	private ConcurrentMap<String, String> pendingPayloadItems; // <pubsub item id, iq packet id>
+	private Map<String, String> subscriptionIds; // <node id, subscription id>
+	private Map<String, List<PublishFuture>> pendingPublishingRequests; // <iq packet id, requests>
+	private Map<String, RequestFuture<DataObject>> pendingEchoes; // <pubsub item id, request>
+	private Map<String, Integer> itemEventListenerReferences; // <node id, number of references>
 	private Map<String, PacketListener> pubsubServiceListeners;
-	private Map<String, PubSubManager> pubsubManagers;
-	private PacketInterceptor pubsubInterceptor;
+	private ConcurrentMap<String, PubSubManager> pubsubManagers;
+	private ConcurrentMap<String, ConcurrentMap<String, Node>> nodeCache; // <pubsub service JID, <node id, node>>
+	private SpaceChangeListener spaceChangeListener;
+	private Outbox outbox;
+	private ScheduledExecutorService timeoutScheduler;
 	
 	private Map<String, PacketListener> persistenceServiceListeners;
 
@@ -114,25 +160,58 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		this.spaceHandler = spaceHandler;
 
 		this.timeout = connectionHandler.getConfiguration().requestTimeout();
+		if (connectionHandler.getConfiguration() instanceof ConnectionConfiguration) {
+			ConnectionConfiguration configuration = (ConnectionConfiguration) connectionHandler.getConfiguration();
+			this.publishWindowSize = configuration.getPublishWindowSize();
+			this.itemsPerPublishRequest = configuration.getItemsPerPublishRequest();
+			this.isOutboxCoalescingEnabled = configuration.isOutboxCoalescingEnabled();
+			this.publishThrottle = new PublishThrottle(configuration.getPublishRateLimit(), configuration.getMaxPendingPublishRequests(), configuration.getPublishOverflowPolicy());
+		} else {
+			this.publishThrottle = new PublishThrottle(0, 0, PublishOverflowPolicy.BLOCK);
+		}
 		this.userWantedMode = Mode.OFFLINE;
 		this.connection = this.connectionHandler.getXMPPConnection();
-		this.listeners = new ArrayList<DataObjectListener>();
-		this.handledSpaces = new ArrayList<Space>();
+		this.listenerDispatchers = new ConcurrentHashMap<DataObjectListener, DataObjectDispatcher>();
+		this.listenerRouter = new ListenerRouter();
+		this.batchListenerDispatchers = new ConcurrentHashMap<DataObjectBatchListener, DataObjectBatchDispatcher>();
+		this.handledSpaces = new ConcurrentHashMap<String, Space>();
+		this.spaceDirectory = spaceHandler.getSpaceDirectory();
 		this.datawrapper = DataWrapper.getInstance();
+		this.cacheWriter = new DataObjectCacheWriter(datawrapper, CACHE_BATCH_SIZE, CACHE_FLUSH_DELAY);
+		this.seenItemFilter = new SeenItemFilter(datawrapper, SEEN_ITEMS_LRU_CAPACITY, SEEN_ITEMS_MIN_EXPECTED);
+		this.seenItemFilter.seed();
 		
-		this.pendingPayloadRequests = new HashMap<String, RequestFuture<List<PayloadItem<SimplePayload>>>>();
-		this.pendingPublishingRequests = new HashMap<String, RequestFuture<IQ>>();
+		this.pendingPayloadRequests = new ConcurrentHashMap<String, PayloadRequest>();
+		this.pendingPayloadItems = new ConcurrentHashMap<String, String>();
+		this.subscriptionIds = new ConcurrentHashMap<String, String>();
+		this.pendingPublishingRequests = new ConcurrentHashMap<String, List<PublishFuture>>();
+		this.pendingEchoes = new ConcurrentHashMap<String, RequestFuture<DataObject>>();
+		this.itemEventListenerReferences = new HashMap<String, Integer>();
 		this.pendingPersistenceServiceQueries = new HashMap<String, RequestFuture<IQ>>();
 		this.userInfo = this.connectionHandler.getCurrentUser();
+		this.outbox = new Outbox(this, datawrapper, userInfo.getBareJID(), publishWindowSize, isOutboxCoalescingEnabled);
 		this.dataObjectFilter = null;
+		this.compiledDataObjectFilter = null;
 		
-		this.publishIdMap = new HashMap<String, String>();
+		this.timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("DataHandler"));
 		
-		this.pubsubServiceListeners = new HashMap<String, PacketListener>();
+		this.pubsubServiceListeners = new ConcurrentHashMap<String, PacketListener>();
 		this.persistenceServiceListeners = new HashMap<String, PacketListener>();
-		this.pubsubManagers = new HashMap<String, PubSubManager>();
+		this.pubsubManagers = new ConcurrentHashMap<String, PubSubManager>();
+		this.nodeCache = new ConcurrentHashMap<String, ConcurrentMap<String, Node>>();
+		this.spaceChangeListener = new SpaceChangeListener() {
+			@Override
+			public void spaceConfigured(Space space) {
+				invalidateNode(space, false);
+			}
+			
+			@Override
+			public void spaceDeleted(Space space) {
+				invalidateNode(space, true);
+			}
+		};
+		spaceHandler.addSpaceChangeListener(spaceChangeListener);
 		
-		setPubSubPacketInterceptor();
 		setConnectionStatusListener();
 	}
 	
@@ -148,18 +227,12 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 				case ONLINE:
 					if (isConnectionResetted) {
 						changeConnectionHandler(connectionHandler);
-						for (Space space : handledSpaces) {
+						for (Space space : handledSpaces.values()) {
 							registerItemEventListener(space);
 						}
 						isConnectionResetted = false;
 					}
-					try {
-						sendSavedPayloads();
-					} catch (UnknownEntityException e) {
-						Log.w("DataHandler", "An UnknownEntityException was thrown while trying to send saved payloads.", e);
-					} catch (InvalidDataException e) {
-						Log.w("DataHandler", "A cached data object could not be published as it was rejected.", e);
-					}
+					outbox.drain();
 					break;
 				default:
 					// Do nothing.
@@ -183,7 +256,7 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 * If the given component is already registered, nothing happens.
 	 * @param componentJID JID of the pubsub service component in the XMPP network, e.g. pubsub.mydomain.com.
 	 */
-	private void registerPubsubService(final String componentJID) {
+	private synchronized void registerPubsubService(final String componentJID) {
 		if (pubsubServiceListeners.containsKey(componentJID)) {
 			return;
 		}
@@ -201,16 +274,19 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		
 		PacketListener packetListener = new PacketListener() {
 
-			@SuppressWarnings("unchecked")
 			@Override
 			public void processPacket(Packet packet) {
 				String packetId = packet.getPacketID();
-				if (publishIdMap.containsKey(packetId)) {
-					pendingPublishingRequests.get(publishIdMap.get(packetId)).setResponse((IQ) packet);
-				} else if (pendingPayloadRequests.containsKey(packetId)) {
-					RequestFuture<List<PayloadItem<SimplePayload>>> spaceFuture = pendingPayloadRequests.get(packet.getPacketID());
-					ItemsExtension itemsElem = (ItemsExtension) ((PubSub)packet).getExtension(PubSubElementType.ITEMS);
-					spaceFuture.setResponse((List<PayloadItem<SimplePayload>>) itemsElem.getItems());
+				List<PublishFuture> publishFutures = pendingPublishingRequests.remove(packetId);
+				if (publishFutures != null) {
+					for (PublishFuture publishFuture : publishFutures) {
+						publishFuture.setResponse((IQ) packet);
+					}
+					return;
+				}
+				PayloadRequest payloadRequest = pendingPayloadRequests.remove(packetId);
+				if (payloadRequest != null) {
+					handlePayloadResponse(payloadRequest, (IQ) packet);
 				}
 			}
 		};
@@ -227,7 +303,7 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 * If the given component is not registered, nothing happens.
 	 * @param componentJID JID of the pubsub service component in the XMPP network, e.g. pubsub.mydomain.com.
 	 */
-	private void removePubsubService(String componentJID) {
+	private synchronized void removePubsubService(String componentJID) {
 		PacketListener packetListener = pubsubServiceListeners.get(componentJID);
 		if (packetListener == null) {
 			return;
@@ -292,98 +368,266 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	}
 	
 	/**
-	 * Registers a packet interceptor for pubsub publishing requests.
-	 * When a publishing request is intercepted, the related request future is complemented by the IQ packet id.
+	 * Adds a listener for data objects published on any space handled by this handler.
+	 * @param listener Listener to add.
+	 * The call-back method of listener is called each time a new item is published on the pubsub node of a MIRROR space.
+	 * The call-back is performed on a dedicated thread of the listener. Up to {@value #DEFAULT_LISTENER_QUEUE_CAPACITY} data objects are queued,
+	 * if the listener does not keep up, receiving further data objects is blocked.   
 	 */
-	private void setPubSubPacketInterceptor() {
-		PacketFilter packetFilter = new PacketFilter() {
-			@Override
-			public boolean accept(Packet packet) {
-				if (!(packet instanceof IQ)) return false;
-				IQ iqPacket = (IQ) packet;
-				if (iqPacket.getType() != IQ.Type.SET) return false; 
-				if (packet.getExtension(NamespaceConfig.XMPP_PUBSUB) == null) return false;
-				return true;
-			}
-		};
-		pubsubInterceptor = new PacketInterceptor() {
-			@Override
-			public void interceptPacket(Packet packet) {
-				IQ iq = (IQ) packet;
-				String childElement = iq.getChildElementXML();
-				for (String itemId : pendingPublishingRequests.keySet()) {
-					if (childElement.contains(itemId)) {
-						publishIdMap.put(iq.getPacketID(), itemId);
-					}
-				}
-			}
-		};
-		connection.addPacketInterceptor(pubsubInterceptor, packetFilter);
+	@Override
+	public void addDataObjectListener(DataObjectListener listener){
+		addDataObjectListener(listener, DEFAULT_LISTENER_QUEUE_CAPACITY, DispatchOverflowPolicy.BLOCK);
 	}
-
+	
 	/**
 	 * Adds a listener for data objects published on any space handled by this handler.
+	 * The call-back method of listener is called on a dedicated thread of the listener each time a new item is published on the pubsub node of a MIRROR space.
+	 * If the listener is already registered, nothing happens.
 	 * @param listener Listener to add.
-	 * The call-back method of listener is called each time a new item is published on the pubsub node of a MIRROR space.   
+	 * @param queueCapacity Maximum number of data objects queued for the listener. Must be positive.
+	 * @param overflowPolicy Policy applied when a data object is received while the queue of the listener is full.
 	 */
-	@Override
-	public void addDataObjectListener(DataObjectListener listener){
-		if (!listeners.contains(listener))
-			listeners.add(listener);
+	public void addDataObjectListener(DataObjectListener listener, int queueCapacity, DispatchOverflowPolicy overflowPolicy){
+		addDataObjectListener(listener, null, null, queueCapacity, overflowPolicy);
+	}
+	
+	/**
+	 * Adds a listener for data objects published on a specific space and/or passing a specific filter.
+	 * The call-back is performed on a dedicated thread of the listener. Up to {@value #DEFAULT_LISTENER_QUEUE_CAPACITY} data objects are queued,
+	 * if the listener does not keep up, receiving further data objects is blocked.
+	 * If the listener is already registered, nothing happens.
+	 * @param listener Listener to add.
+	 * @param spaceId Identifier of the space to receive data objects for. <code>null</code> to receive data objects of all handled spaces.
+	 * @param filter Filter the data objects have to pass. <code>null</code> to receive all data objects.
+	 * Changes applied to the filter after the listener is added are not considered.
+	 */
+	public void addDataObjectListener(DataObjectListener listener, String spaceId, DataObjectFilter filter){
+		addDataObjectListener(listener, spaceId, filter, DEFAULT_LISTENER_QUEUE_CAPACITY, DispatchOverflowPolicy.BLOCK);
+	}
+	
+	/**
+	 * Adds a listener for data objects published on a specific space and/or passing a specific filter.
+	 * The call-back method of listener is called on a dedicated thread of the listener.
+	 * If the listener is already registered, nothing happens.
+	 * @param listener Listener to add.
+	 * @param spaceId Identifier of the space to receive data objects for. <code>null</code> to receive data objects of all handled spaces.
+	 * @param filter Filter the data objects have to pass. <code>null</code> to receive all data objects.
+	 * Changes applied to the filter after the listener is added are not considered.
+	 * @param queueCapacity Maximum number of data objects queued for the listener. Must be positive.
+	 * @param overflowPolicy Policy applied when a data object is received while the queue of the listener is full.
+	 */
+	public void addDataObjectListener(DataObjectListener listener, String spaceId, DataObjectFilter filter, int queueCapacity, DispatchOverflowPolicy overflowPolicy){
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException("The queue capacity has to be positive.");
+		}
+		if (listenerDispatchers.containsKey(listener)) {
+			return;
+		}
+		DataObjectDispatcher dispatcher = new DataObjectDispatcher(listener, queueCapacity, overflowPolicy);
+		if (listenerDispatchers.putIfAbsent(listener, dispatcher) == null) {
+			dispatcher.start();
+			listenerRouter.add(dispatcher, spaceId, filter);
+		}
+	}
+	
+	/**
+	 * Adds a listener receiving the data objects of each notification as one batch.
+	 * If the listener is already registered, nothing happens.
+	 * @param listener Batch listener to add.
+	 */
+	public void addDataObjectBatchListener(DataObjectBatchListener listener){
+		addDataObjectBatchListener(listener, 0, 0);
+	}
+	
+	/**
+	 * Adds a listener receiving data objects in batches.
+	 * The data objects published on a space are collected until the batch size is reached or the coalescing window expired.
+	 * The call-back method is called on a dedicated thread of the listener.
+	 * If the listener is already registered, nothing happens.
+	 * @param listener Batch listener to add.
+	 * @param maxBatchSize Number of data objects which trigger an immediate delivery. <code>0</code> for no limit.
+	 * @param maxDelay Coalescing window in milliseconds. <code>0</code> to deliver the data objects of each notification immediately.
+	 */
+	public void addDataObjectBatchListener(DataObjectBatchListener listener, int maxBatchSize, long maxDelay){
+		if (maxBatchSize < 0 || maxDelay < 0) {
+			throw new IllegalArgumentException("Neither batch size nor delay may be negative.");
+		}
+		if (batchListenerDispatchers.containsKey(listener)) {
+			return;
+		}
+		DataObjectBatchDispatcher dispatcher = new DataObjectBatchDispatcher(listener, maxBatchSize, maxDelay);
+		if (batchListenerDispatchers.putIfAbsent(listener, dispatcher) != null) {
+			dispatcher.shutdown();
+		}
+	}
+	
+	/**
+	 * Removes a data object batch listener. Data objects not delivered yet are discarded.
+	 * @param listener Batch listener to remove.
+	 */
+	public void removeDataObjectBatchListener(DataObjectBatchListener listener){
+		DataObjectBatchDispatcher dispatcher = batchListenerDispatchers.remove(listener);
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+	
+	/**
+	 * Returns the delivery statistics of a data object listener.
+	 * @param listener Registered data object listener.
+	 * @return Statistics snapshot or <code>null</code> if the listener is not registered.
+	 */
+	public ListenerStatistics getListenerStatistics(DataObjectListener listener){
+		DataObjectDispatcher dispatcher = listenerDispatchers.get(listener);
+		return dispatcher != null ? dispatcher.getStatistics() : null;
 	}
 	
 	/**
 	 * Retrieves a pubsub node from the pubsub service.
+	 * Retrieved nodes are cached. If the node is retrieved by multiple threads at the same time, all of them get the node cached first.
 	 * @param nodeId The id of the node to retrieve.
 	 * @param pubsubService JID of the pubsub service component handling the the node.
 	 * @return The pubsub node.
 	 * @throws UnknownEntityException No node with the given ID exists.
 	 */
 	protected Node getNode(String nodeId, String pubsubService) throws UnknownEntityException {
-		if (!pubsubManagers.containsKey(pubsubService)) {
-			registerPubsubService(pubsubService);
+		ConcurrentMap<String, Node> cachedNodes = nodeCache.get(pubsubService);
+		if (cachedNodes == null) {
+			ConcurrentMap<String, Node> newCachedNodes = new ConcurrentHashMap<String, Node>();
+			cachedNodes = nodeCache.putIfAbsent(pubsubService, newCachedNodes);
+			if (cachedNodes == null) {
+				cachedNodes = newCachedNodes;
+			}
 		}
+		Node cachedNode = cachedNodes.get(nodeId);
+		if (cachedNode != null) {
+			return cachedNode;
+		}
+		
 		PubSubManager manager = pubsubManagers.get(pubsubService);
+		if (manager == null) {
+			registerPubsubService(pubsubService);
+			manager = pubsubManagers.get(pubsubService);
+		}
 		
+		Node node;
 		try {
-			return manager.getNode(nodeId);
+			node = manager.getNode(nodeId);
 		} catch(XMPPException e){
 			throw new UnknownEntityException("The node " + nodeId + " couldn't be retrieved.", e);
 		}
+		cachedNode = cachedNodes.putIfAbsent(nodeId, node);
+		return cachedNode != null ? cachedNode : node;
+	}
+	
+	/**
+	 * Removes the pubsub node of a space from the node cache.
+	 * If the space is handled by this handler, the item listener is moved to the node retrieved next.
+	 * @param space Space to invalidate pubsub node for.
+	 * @param isDeleted <code>true</code> if the space was deleted, <code>false</code> if it was reconfigured. 
+	 */
+	private void invalidateNode(Space space, boolean isDeleted) {
+		SpaceChannel channel = space.getPubSubChannel();
+		if (channel == null) {
+			return;
+		}
+		Map<String, String> properties = channel.getProperties();
+		String nodeId = properties.get("node");
+		String pubsubService = properties.get("domain");
+		
+		Space handledSpace = handledSpaces.get(space.getId().toLowerCase());
+		
+		if (handledSpace != null && isDeleted) {
+			handledSpaces.remove(space.getId().toLowerCase());
+		}
+		
+		synchronized (itemEventListenerReferences) {
+			Map<String, Node> cachedNodes = nodeCache.get(pubsubService);
+			Node cachedNode = cachedNodes != null ? cachedNodes.remove(nodeId) : null;
+			subscriptionIds.remove(nodeId);
+			boolean isListening = itemEventListenerReferences.containsKey(nodeId);
+			if (isListening && cachedNode != null) {
+				cachedNode.removeItemEventListener(this);
+			}
+			// the pubsub manager keeps its own node map, which cannot be cleared for a single node
+			if (pubsubManagers.containsKey(pubsubService)) {
+				pubsubManagers.replace(pubsubService, new PubSubManager(connection, pubsubService));
+			}
+			
+			if (isDeleted) {
+				itemEventListenerReferences.remove(nodeId);
+			} else if (isListening && getMode() == Mode.ONLINE) {
+				try {
+					getNode(nodeId, pubsubService).addItemEventListener(this);
+				} catch (UnknownEntityException e) {
+					Log.d("DataHandler", "Failed to register to the pubsub node of a reconfigured space.", e);
+				}
+			}
+		}
 	}
 	
 	/**
 	 * Item handler of this data handler implementation. Checks if received items are already cached,
 	 * if not, it caches them. Ultimately it sends the items to the subscribed listeners.
 	 */
+	@SuppressWarnings("unchecked")
 	@Override
 	public void handlePublishedItems(ItemPublishEvent<PayloadItem<SimplePayload>> items){
 		String spaceId = getSpaceId(items.getNodeId());
-		if (spaceId == null) return;
+		if (spaceId == null && pendingEchoes.isEmpty()) {
+			Log.d("DataHandler", "Ignoring items of node " + items.getNodeId() + ": No handled space uses the node.");
+			return;
+		}
 		List<String> toRequest = new ArrayList<String>();
-		for (PayloadItem<SimplePayload> item:items.getItems()){
-        	if (item.getPayload() == null && !pendingPayloadRequests.containsKey(item.getId())){
-        		toRequest.add(item.getId());
+		List<DataObject> acceptedObjects = batchListenerDispatchers.isEmpty() ? null : new ArrayList<DataObject>();
+		// notifications without payload are parsed as plain items
+		List<? extends Item> publishedItems = items.getItems();
+		for (Item publishedItem:publishedItems){
+			RequestFuture<DataObject> echoFuture = pendingEchoes.get(publishedItem.getId());
+			if (spaceId == null && echoFuture == null) {
+				continue;
+			}
+			Object payload = publishedItem instanceof PayloadItem ? ((PayloadItem<?>) publishedItem).getPayload() : null;
+        	if (payload == null){
+        		if (!pendingPayloadItems.containsKey(publishedItem.getId())) {
+        			toRequest.add(publishedItem.getId());
+        		}
         		continue;
         	}
+        	if (!(payload instanceof SimplePayload)) {
+        		continue;
+        	}
+        	PayloadItem<SimplePayload> item = (PayloadItem<SimplePayload>) publishedItem;
         	DataObject obj = parseItemToDataObject(item);
-        	if (dataObjectFilter == null || dataObjectFilter.isDataObjectValid(obj)) {
-				if (!datawrapper.isDataObjectAlreadyCached(item.getId())){
-					datawrapper.saveDataObject(items.getNodeId(), obj, item.getId());
+        	if (echoFuture != null) {
+        		pendingEchoes.remove(item.getId());
+        		echoFuture.setResponse(obj);
+        	}
+        	if (spaceId == null) {
+        		continue;
+        	}
+        	DataObjectFilter filter = compiledDataObjectFilter;
+        	if (filter == null || filter.isDataObjectValid(obj)) {
+				if (!seenItemFilter.isCached(item.getId())) {
+					seenItemFilter.add(item.getId());
+					cacheWriter.add(items.getNodeId(), item.getId(), obj);
 				}
-				for (DataObjectListener listener:listeners){
-					listener.handleDataObject(obj, spaceId);
+				listenerRouter.route(obj, spaceId);
+				if (acceptedObjects != null) {
+					acceptedObjects.add(obj);
 				}
 			}
 		}
+		if (acceptedObjects != null && !acceptedObjects.isEmpty()){
+			for (DataObjectBatchDispatcher dispatcher:batchListenerDispatchers.values()){
+				dispatcher.dispatch(acceptedObjects, spaceId);
+			}
+		}
 		if (!toRequest.isEmpty()){
-			for (String id:toRequest){
-				try {
-					retrievePayload(items.getNodeId(), id);
-				} catch (Exception e) {
-					//Ignore
-					continue;
-				}
+			try {
+				retrievePayloads(items.getNodeId(), toRequest);
+			} catch (Exception e) {
+				Log.d("DataHandler", "Failed to request the payloads of " + toRequest.size() + " item(s).", e);
 			}
 		}
 	}
@@ -394,13 +638,11 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 * @return A spaceId or <code>null</code> if no space was found.
 	 */
 	private String getSpaceId(String nodeId){
-		for (Space space:handledSpaces){
-			Map<String, String> prop = space.getPubSubChannel().getProperties();
-			if (prop.get("node").equals(nodeId)){
-				return space.getId();
-			}
+		Space space = spaceDirectory.getSpaceByNode(nodeId);
+		if (space == null || !handledSpaces.containsKey(space.getId().toLowerCase())) {
+			return null;
 		}
-		return null;
+		return space.getId();
 	}
 
 	/**
@@ -414,10 +656,130 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 */
 	@Override
 	public void publishDataObject(DataObject object, String spaceId) throws UnknownEntityException, InvalidDataException {
-		de.imc.mirror.sdk.android.DataObject obj = (de.imc.mirror.sdk.android.DataObject) object;
-		SimplePayload payload = new SimplePayload(obj.getElementName(), 
-				obj.getNamespaceURI(), obj.toString());
-		publish(spaceId, payload);
+		publish(spaceId, (de.imc.mirror.sdk.android.DataObject) object);
+	}
+	
+	/**
+	 * Publishes a data object on the space with the given id without waiting for the response of the spaces service.
+	 * ONLINE mode: The object is directly published on the related pubsub node. The returned request is completed when the publishing is acknowledged or rejected, or the request times out.
+	 * OFFLINE mode: The object is stored locally and published when the connection is establised again. The returned request is already completed.
+	 * @param object Data object to publish.
+	 * @param spaceId Identifier if the space to publish.
+	 * @return Completion handle for the publishing request.
+	 * @throws UnknownEntityException A space with the given id is not known to the space handler.
+	 * @throws RequestException The publishing capacity is exhausted and the overflow policy is {@link PublishOverflowPolicy#FAIL_FAST}.
+	 * @see ConnectionConfigurationBuilder#setPublishOverflowPolicy(PublishOverflowPolicy)
+	 */
+	public PublishFuture publishDataObjectAsync(DataObject object, String spaceId) throws UnknownEntityException {
+		return publishAsync(spaceId, (de.imc.mirror.sdk.android.DataObject) object);
+	}
+	
+	/**
+	 * Returns the number of publishing requests which are either waiting for publishing capacity or for the response of the spaces service.
+	 * Producers may use this number to adapt the rate they publish data objects with.
+	 * @return Number of pending publishing requests.
+	 * @see ConnectionConfigurationBuilder#setPublishRateLimit(double)
+	 * @see ConnectionConfigurationBuilder#setMaxPendingPublishRequests(int)
+	 */
+	public int getPendingPublishCount() {
+		return publishThrottle.getPendingCount();
+	}
+	
+	/**
+	 * Creates the pubsub payload for a data object.
+	 * @param object Data object to create payload for.
+	 * @return Payload containing the XML representation of the data object.
+	 */
+	private SimplePayload createPayload(de.imc.mirror.sdk.android.DataObject object) {
+		return new SimplePayload(object.getElementName(), object.getNamespaceURI(), object.toString());
+	}
+	
+	/**
+	 * Publishes multiple data objects on the space with the given id.
+	 * ONLINE mode: The objects are published pipelined. Up to the configured window size of publishing requests are sent without waiting for the responses of the spaces service, each containing up to the configured number of items.
+	 * OFFLINE mode: The objects are stored locally and published when the connection is establised again.
+	 * The method blocks until all requests are completed. If the publishing capacity is exhausted and the overflow policy is
+	 * {@link PublishOverflowPolicy#FAIL_FAST}, the requests which cannot be sent are completed with {@link PublishFuture.Status#FAILED}.
+	 * @param objects Data objects to publish.
+	 * @param spaceId Identifier if the space to publish.
+	 * @return List of completed publishing requests, one for each data object in the order of the given collection.
+	 * @throws UnknownEntityException A space with the given id is not known to the space handler.
+	 * @throws RequestException The thread was interrupted while waiting for a free slot of the publishing window or for the responses.
+	 * @see ConnectionConfigurationBuilder#setPublishWindowSize(int)
+	 * @see ConnectionConfigurationBuilder#setItemsPerPublishRequest(int)
+	 */
+	public List<PublishFuture> publishDataObjects(Collection<DataObject> objects, String spaceId) throws UnknownEntityException, RequestException {
+		List<PublishFuture> publishFutures = new ArrayList<PublishFuture>(objects.size());
+		if (getMode() != Mode.ONLINE) {
+			for (DataObject object : objects) {
+				publishFutures.add(publishDataObjectAsync(object, spaceId));
+			}
+			return publishFutures;
+		}
+		
+		SpaceChannel channel = spaceHandler.getPubSubChannel(spaceId);
+		Map<String, String> properties = channel.getProperties();
+		LeafNode node = (LeafNode) getNode(properties.get("node"), properties.get("domain"));
+		if (node == null) {
+			throw new UnknownEntityException("There's no node with this id.");
+		}
+		
+		Semaphore window = new Semaphore(publishWindowSize);
+		try {
+			List<PayloadItem<SimplePayload>> batch = new ArrayList<PayloadItem<SimplePayload>>(itemsPerPublishRequest);
+			for (DataObject object : objects) {
+				SimplePayload payload = createPayload((de.imc.mirror.sdk.android.DataObject) object);
+				batch.add(new PayloadItem<SimplePayload>(UUID.randomUUID().toString(), payload));
+				if (batch.size() >= itemsPerPublishRequest) {
+					publishFutures.addAll(publishBatch(properties.get("domain"), node.getId(), batch, window));
+					batch = new ArrayList<PayloadItem<SimplePayload>>(itemsPerPublishRequest);
+				}
+			}
+			if (!batch.isEmpty()) {
+				publishFutures.addAll(publishBatch(properties.get("domain"), node.getId(), batch, window));
+			}
+			// wait until all outstanding requests are completed
+			window.acquire(publishWindowSize);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RequestException("Publishing the data objects was interrupted.", e);
+		}
+		return publishFutures;
+	}
+	
+	/**
+	 * Sends a single publishing request for the given items as soon as the publishing window has a free slot.
+	 * The slot is released when the request is completed.
+	 * @param pubsubService JID of the pubsub service hosting the node.
+	 * @param nodeId Identifier of the pubsub node to publish the items on.
+	 * @param items Items to publish.
+	 * @param window Semaphore representing the publishing window.
+	 * @return Publishing requests for the given items. If the request cannot be sent, the requests are already completed with {@link PublishFuture.Status#FAILED}.
+	 * @throws InterruptedException The thread was interrupted while waiting for a free slot.
+	 */
+	private List<PublishFuture> publishBatch(String pubsubService, String nodeId, List<PayloadItem<SimplePayload>> items, final Semaphore window) throws InterruptedException {
+		window.acquire();
+		List<PublishFuture> publishFutures;
+		try {
+			publishFutures = sendPublishRequest(pubsubService, nodeId, items);
+		} catch (RequestException e) {
+			window.release();
+			publishFutures = new ArrayList<PublishFuture>(items.size());
+			for (PayloadItem<SimplePayload> item : items) {
+				PublishFuture publishFuture = new PublishFuture(item.getId());
+				publishFuture.complete(PublishFuture.Status.FAILED, e);
+				publishFutures.add(publishFuture);
+			}
+			return publishFutures;
+		}
+		// all items of the batch are answered by the same response
+		publishFutures.get(0).addListener(new PublishListener() {
+			@Override
+			public void handlePublishResult(PublishFuture future) {
+				window.release();
+			}
+		});
+		return publishFutures;
 	}
 	
 	/**
@@ -436,102 +798,187 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	}
 	
 	/**
-	 * If online, the method publishs a payload.
-	 * If offline, it only saves the payload in the sendcache.
-	 * @param spaceId The id of the space to send the payload to.
-	 * @param payload The payload to send.
+	 * If online, the method publishs a data object and waits for the response.
+	 * If offline, it only saves the data object in the outbox.
+	 * @param spaceId The id of the space to send the data object to.
+	 * @param object The data object to send.
 	 * @throws UnknownEntityException Thrown when given space id cannot be mapped.
 	 * @throws InvalidDataException The data was rejected by the spaces service. 
 	 * @throws RequestException The request failed.
 	 */
-	private void publish(String spaceId, SimplePayload payload) throws UnknownEntityException, InvalidDataException, RequestException {
-		if (getMode() == Mode.ONLINE) {
-			SpaceChannel channel = spaceHandler.getPubSubChannel(spaceId);
-			Map<String, String> properties = channel.getProperties();
-			LeafNode node = (LeafNode) getNode(properties.get("node"), properties.get("domain"));
-			if (node == null) {
-				throw new UnknownEntityException("There's no node with this id.");
-			}
-			String itemId = UUID.randomUUID().toString();
-			PayloadItem<SimplePayload> item = new PayloadItem<SimplePayload>(itemId, payload);
-			RequestFuture<IQ> requestFuture = new RequestFuture<IQ>();
-			pendingPublishingRequests.put(itemId, requestFuture);
-			node.publish(item);
-			try {
-				IQ response = requestFuture.get(timeout, TimeUnit.MILLISECONDS);
-				XMPPError error = response.getError(); 
-				if (error != null) {
-					throw new InvalidDataException(error.getMessage());
-				}
-			} catch (InterruptedException e){
-				throw new RequestException("Receiving a response was interrupted.", e);
-			} catch (ExecutionException e) {
+	private void publish(String spaceId, de.imc.mirror.sdk.android.DataObject object) throws UnknownEntityException, InvalidDataException, RequestException {
+		PublishFuture publishFuture = publishAsync(spaceId, object);
+		awaitPublishResponse(publishFuture);
+	}
+	
+	/**
+	 * Waits until a publishing request is completed.
+	 * @param publishFuture Request to wait for.
+	 * @throws InvalidDataException The data was rejected by the spaces service. 
+	 * @throws RequestException The request failed or timed out.
+	 */
+	private void awaitPublishResponse(PublishFuture publishFuture) throws InvalidDataException, RequestException {
+		try {
+			publishFuture.get();
+		} catch (InterruptedException e) {
+			throw new RequestException("Receiving a response was interrupted.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof InvalidDataException) {
+				throw (InvalidDataException) cause;
+			} else if (cause instanceof RequestException) {
+				throw (RequestException) cause;
+			} else {
 				throw new RequestException("Couldn't receive a response.", e);
-			} catch (TimeoutException e) {
-				throw new RequestException("Receiving a response timed out.", e);
 			}
 		}
+	}
+	
+	/**
+	 * If online, the method publishs a data object without waiting for the response.
+	 * If offline, it only saves the data object in the outbox.
+	 * @param spaceId The id of the space to send the data object to.
+	 * @param object The data object to send.
+	 * @return Completion handle for the publishing request.
+	 * @throws UnknownEntityException Thrown when given space id cannot be mapped.
+	 */
+	private PublishFuture publishAsync(String spaceId, de.imc.mirror.sdk.android.DataObject object) throws UnknownEntityException {
+		SimplePayload payload = createPayload(object);
+		if (getMode() == Mode.ONLINE) {
+			return publishOnline(spaceId, new PayloadItem<SimplePayload>(UUID.randomUUID().toString(), payload));
+		}
 		else {
 			String id = UUID.randomUUID().toString();
-			datawrapper.savePayloadToSend(userInfo.getBareJID(), id, spaceId, payload);
+			outbox.add(id, spaceId, object, payload);
+			PublishFuture publishFuture = new PublishFuture(id);
+			publishFuture.complete(PublishFuture.Status.CACHED, null);
+			return publishFuture;
 		}
 	}
 	
-	private DataObject publishAndRetrieve(String spaceId, SimplePayload payload) throws UnknownEntityException, ConnectionStatusException, InvalidDataException {
-		if (getMode() != Mode.ONLINE) {
-			throw new ConnectionStatusException("The data handler has to be ONLINE to publish data objects synchronously.");
-		}
+	/**
+	 * Publishes a payload stored in the outbox.
+	 * The identifier of the outbox entry is used as pubsub item id. Therefore, a repeated attempt replaces the item instead of duplicating it.
+	 * @param id Identifier of the outbox entry.
+	 * @param spaceId The id of the space to send the payload to.
+	 * @param payload The payload to send.
+	 * @return Completion handle for the publishing request.
+	 * @throws UnknownEntityException Thrown when given space id cannot be mapped.
+	 */
+	protected PublishFuture publishCachedPayload(String id, String spaceId, SimplePayload payload) throws UnknownEntityException {
+		return publishOnline(spaceId, new PayloadItem<SimplePayload>(id, payload));
+	}
+	
+	/**
+	 * Publishes an item on the pubsub node of a space without waiting for the response.
+	 * @param spaceId The id of the space to send the item to.
+	 * @param item The item to publish.
+	 * @return Completion handle for the publishing request.
+	 * @throws UnknownEntityException Thrown when given space id cannot be mapped.
+	 */
+	private PublishFuture publishOnline(String spaceId, PayloadItem<SimplePayload> item) throws UnknownEntityException {
 		SpaceChannel channel = spaceHandler.getPubSubChannel(spaceId);
+		if (channel == null) {
+			throw new UnknownEntityException("The space " + spaceId + " has no pubsub channel.");
+		}
 		Map<String, String> properties = channel.getProperties();
 		LeafNode node = (LeafNode) getNode(properties.get("node"), properties.get("domain"));
-		final String itemId = UUID.randomUUID().toString();
-		final RequestFuture<DataObject> requestFuture = new RequestFuture<DataObject>();
-		final PayloadItem<SimplePayload> itemToPublish = new PayloadItem<SimplePayload>(itemId, payload);
+		if (node == null) {
+			throw new UnknownEntityException("There's no node with this id.");
+		}
+		return sendPublishRequest(properties.get("domain"), node.getId(), Collections.singletonList(item)).get(0);
+	}
+	
+	/**
+	 * Sends a publishing request for the given items to the pubsub service.
+	 * The requests are correlated with the response by the IQ packet id and fail if no response is received in time.
+	 * @param pubsubService JID of the pubsub service hosting the node.
+	 * @param nodeId Identifier of the pubsub node to publish the items on.
+	 * @param items Items to publish with a single request.
+	 * @return Pending publishing requests, one for each item in the given order.
+	 * @throws RequestException The publishing capacity is exhausted and the overflow policy is {@link PublishOverflowPolicy#FAIL_FAST}.
+	 */
+	private List<PublishFuture> sendPublishRequest(String pubsubService, String nodeId, List<PayloadItem<SimplePayload>> items) throws RequestException {
+		publishThrottle.acquire();
+		PubSub request = new PubSub();
+		request.setTo(pubsubService);
+		request.setType(IQ.Type.SET);
+		request.addExtension(new PublishItem<PayloadItem<SimplePayload>>(nodeId, items));
+		final String packetId = request.getPacketID();
 		
-		ItemEventListener<PayloadItem<SimplePayload>> itemEventListener = new ItemEventListener<PayloadItem<SimplePayload>>() {
+		List<PublishFuture> publishFutures = new ArrayList<PublishFuture>(items.size());
+		for (PayloadItem<SimplePayload> item : items) {
+			publishFutures.add(new PublishFuture(item.getId()));
+		}
+		pendingPublishingRequests.put(packetId, publishFutures);
+		ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(new Runnable() {
 			@Override
-			public void handlePublishedItems(ItemPublishEvent<PayloadItem<SimplePayload>> event) {
-				for (PayloadItem<SimplePayload> item : event.getItems()) {
-					if (itemToPublish.getId().equals(item.getId())) {
-			        	DataObject dataObject = parseItemToDataObject(item);
-			        	requestFuture.setResponse(dataObject);
-					}
+			public void run() {
+				List<PublishFuture> timedOutRequests = pendingPublishingRequests.remove(packetId);
+				if (timedOutRequests == null) return;
+				for (PublishFuture publishFuture : timedOutRequests) {
+					publishFuture.complete(PublishFuture.Status.TIMED_OUT,
+							new RequestException("Receiving a response timed out.", new TimeoutException()));
 				}
 			}
-		}; 
-		node.addItemEventListener(itemEventListener);
+		}, timeout, TimeUnit.MILLISECONDS);
+		for (PublishFuture publishFuture : publishFutures) {
+			publishFuture.setTimeoutTask(timeoutTask);
+		}
+		// all items of the request are answered by the same response
+		publishFutures.get(0).addListener(new PublishListener() {
+			@Override
+			public void handlePublishResult(PublishFuture future) {
+				publishThrottle.release();
+			}
+		});
 		
-		RequestFuture<IQ> sentNotificationFuture = new RequestFuture<IQ>();
-		pendingPublishingRequests.put(itemId, sentNotificationFuture);
-		node.publish(itemToPublish);
 		try {
-			IQ response = sentNotificationFuture.get(timeout, TimeUnit.MILLISECONDS);
-			XMPPError error = response.getError(); 
-			if (error != null) {
-				throw new InvalidDataException(error.getMessage());
+			connection.sendPacket(request);
+		} catch (RuntimeException e) {
+			pendingPublishingRequests.remove(packetId);
+			for (PublishFuture publishFuture : publishFutures) {
+				publishFuture.complete(PublishFuture.Status.FAILED, new RequestException("Failed to send the publishing request.", e));
 			}
-		} catch (InterruptedException e){
-			throw new RequestException("Failed to sent data object: Receiving a response was interrupted.", e);
-		} catch (ExecutionException e) {
-			throw new RequestException("Failed to sent data object: Couldn't receive a response.", e);
-		} catch (TimeoutException e) {
-			throw new RequestException("Failed to sent data object: Receiving a response timed out.", e);
 		}
+		return publishFutures;
+	}
+	
+	private DataObject publishAndRetrieve(String spaceId, SimplePayload payload) throws UnknownEntityException, ConnectionStatusException, InvalidDataException {
+		if (getMode() != Mode.ONLINE) {
+			throw new ConnectionStatusException("The data handler has to be ONLINE to publish data objects synchronously.");
+		}
+		SpaceChannel channel = spaceHandler.getPubSubChannel(spaceId);
+		Map<String, String> properties = channel.getProperties();
+		LeafNode node = (LeafNode) getNode(properties.get("node"), properties.get("domain"));
+		String itemId = UUID.randomUUID().toString();
+		RequestFuture<DataObject> requestFuture = new RequestFuture<DataObject>();
+		PayloadItem<SimplePayload> itemToPublish = new PayloadItem<SimplePayload>(itemId, payload);
 		
-		DataObject dataObject = null;
+		// the echo is dispatched by the item listener of the data handler
+		pendingEchoes.put(itemId, requestFuture);
+		retainItemEventListener(node);
 		try {
-			dataObject = requestFuture.get(timeout, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException e) {
-			throw new RequestException("Receiving a response was interrupted.", e);
-		} catch (ExecutionException e) {
-			throw new RequestException("Couldn't receive a response.", e);
-		} catch (TimeoutException e) {
-			throw new RequestException("The request timed out.", e);
+			PublishFuture sentNotificationFuture = sendPublishRequest(properties.get("domain"), node.getId(), Collections.singletonList(itemToPublish)).get(0);
+			try {
+				awaitPublishResponse(sentNotificationFuture);
+			} catch (RequestException e) {
+				throw new RequestException("Failed to sent data object: " + e.getMessage(), e);
+			}
+			
+			try {
+				return requestFuture.get(timeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				throw new RequestException("Receiving a response was interrupted.", e);
+			} catch (ExecutionException e) {
+				throw new RequestException("Couldn't receive a response.", e);
+			} catch (TimeoutException e) {
+				throw new RequestException("The request timed out.", e);
+			}
 		} finally {
-			node.removeItemEventListener(itemEventListener);
+			pendingEchoes.remove(itemId);
+			releaseItemEventListener(node);
 		}
-		
-		return dataObject;
 	}
 
 	/**
@@ -540,33 +987,41 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 */
 	@Override
 	public void removeDataObjectListener(DataObjectListener listener){
-		listeners.remove(listener);
+		DataObjectDispatcher dispatcher = listenerDispatchers.remove(listener);
+		if (dispatcher != null) {
+			listenerRouter.remove(dispatcher);
+			dispatcher.shutdown();
+		}
 	}
 	
 	/**
 	 * Gets the pubsub service of a pubsub node.
+	 * The node is looked up in the space directory. If no cached space uses the node and the space handler is online,
+	 * the spaces are retrieved from the server, e.g., for a space the user was added to recently.
 	 * @param nodeId The id of the node to get the pubsub service for.
-	 * @return The pubsubservice.
+	 * @return The pubsubservice or <code>null</code> if no space available to the user uses the node.
 	 */
 	protected String getPubsubService(String nodeId){
-		String pubsubService = null;
-		List<Space> spaces = spaceHandler.getAllSpaces();
-		for(Space space:spaces){
-			SpaceChannel pubsub = space.getPubSubChannel();
-			if (pubsub.getProperties().get("node").equalsIgnoreCase(nodeId))
-				return pubsubService = pubsub.getProperties().get("domain");
+		Space space = spaceDirectory.getSpaceByNode(nodeId);
+		if (space == null && spaceHandler.getMode() == Mode.ONLINE) {
+			// updates the space directory
+			spaceHandler.getAllSpaces();
+			space = spaceDirectory.getSpaceByNode(nodeId);
+		}
+		if (space == null || space.getPubSubChannel() == null) {
+			return null;
 		}
-		return pubsubService;
+		return space.getPubSubChannel().getProperties().get("domain");
 	}
 
 	/**
-	 * Sends a request to the server to retrieve the payload of an item
-	 * @param nodeId The id of the node the item is from.
-	 * @param payloadId The id of the payload.
-	 * @throws SpaceManagementException Thrown when an error occured while retrieving the payload from the server.
+	 * Sends a single request to the server to retrieve the payloads of multiple items of a node.
+	 * The request is answered asynchronously. Items for which a request is already pending are skipped.
+	 * @param nodeId The id of the node the items are from.
+	 * @param itemIds The ids of the items to retrieve the payloads for.
 	 * @throws UnknownEntityException Thrown when no pubsub node could be retrieved.
 	 */
-	private void retrievePayload(final String nodeId, final String payloadId) throws SpaceManagementException, UnknownEntityException{
+	private void retrievePayloads(final String nodeId, List<String> itemIds) throws UnknownEntityException{
 		if (getMode() == Mode.OFFLINE){
 			throw new IllegalStateException("Not connected");
 		}
@@ -574,22 +1029,20 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		if (pubsubService == null){
 			return;
 		}
-		Node node = this.getNode(nodeId, pubsubService);
-		List<Subscription> subs;
-		try {
-			subs = node.getSubscriptions();
-		} catch (XMPPException e) {
-			throw new SpaceManagementException("The Server did not respond.", Type.OTHER, e);
-		}
-		final String subid = subs.get(0).getId();
+		final String subid = getSubscriptionId(this.getNode(nodeId, pubsubService));
+		final List<String> requestedItemIds = new ArrayList<String>(itemIds.size());
 		IQ requestIq = new IQ() {
 			
 			@Override
 			public String getChildElementXML() {
 				Element childElement = new Element("pubsub", NamespaceConfig.XMPP_PUBSUB);
 				Element itemsElement = new Element("items").setAttribute("node", nodeId);
-				itemsElement.setAttribute("subid", subid);
-				itemsElement.addContent(new Element("item").setAttribute("id", payloadId));
+				if (subid != null) {
+					itemsElement.setAttribute("subid", subid);
+				}
+				for (String itemId : requestedItemIds) {
+					itemsElement.addContent(new Element("item").setAttribute("id", itemId));
+				}
 				childElement.addContent(itemsElement);
 				XMLOutputter out = new XMLOutputter();
 				return out.outputString(childElement);
@@ -597,43 +1050,88 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		};
 		requestIq.setType(IQ.Type.GET);
 		requestIq.setTo(pubsubService);
-		requestIq.setPacketID(payloadId);
-		RequestFuture<List<PayloadItem<SimplePayload>>> payloadFuture = new RequestFuture<List<PayloadItem<SimplePayload>>>();
-		pendingPayloadRequests.put(payloadId, payloadFuture);
+		final String packetId = requestIq.getPacketID();
+		for (String itemId : itemIds) {
+			if (pendingPayloadItems.putIfAbsent(itemId, packetId) == null) {
+				requestedItemIds.add(itemId);
+			}
+		}
+		if (requestedItemIds.isEmpty()) {
+			return;
+		}
+		pendingPayloadRequests.put(packetId, new PayloadRequest(nodeId, requestedItemIds));
+		timeoutScheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				PayloadRequest expiredRequest = pendingPayloadRequests.remove(packetId);
+				if (expiredRequest != null) {
+					Log.d("DataHandler", "Request for the payloads of " + expiredRequest.itemIds.size() + " item(s) timed out.");
+					releasePayloadItems(expiredRequest);
+				}
+			}
+		}, timeout, TimeUnit.MILLISECONDS);
 		connection.sendPacket(requestIq);
-		List<PayloadItem<SimplePayload>> response = null;
+	}
+	
+	/**
+	 * Handles the response for a payload request and forwards the retrieved items to the item handler.
+	 * @param request Request the response is sent for.
+	 * @param response IQ response of the pubsub service.
+	 */
+	@SuppressWarnings("unchecked")
+	private void handlePayloadResponse(PayloadRequest request, IQ response) {
 		try {
-			response = payloadFuture.get(timeout, TimeUnit.MILLISECONDS);
-		} catch (InterruptedException e) {
-			throw new SpaceManagementException("Receiving a response was interrupted.", SpaceManagementException.Type.OTHER, e);
-		} catch (ExecutionException e) {
-			throw new SpaceManagementException("Couldn't receive a response.", SpaceManagementException.Type.OTHER, e);
-		} catch (TimeoutException e) {
-			throw new SpaceManagementException("Receiving a response timed out.", SpaceManagementException.Type.OTHER, e);
+			if (response.getType() == IQ.Type.ERROR) {
+				Log.d("DataHandler", "Failed to retrieve payloads: " + response.getError());
+				return;
+			}
+			if (!(response instanceof PubSub)) {
+				return;
+			}
+			ItemsExtension itemsElem = (ItemsExtension) ((PubSub) response).getExtension(PubSubElementType.ITEMS);
+			if (itemsElem != null) {
+				List<PayloadItem<SimplePayload>> retrievedItems = (List<PayloadItem<SimplePayload>>) itemsElem.getItems();
+				handlePublishedItems(new ItemPublishEvent<PayloadItem<SimplePayload>>(request.nodeId, retrievedItems));
+			}
+		} finally {
+			// items still without payload are not requested again
+			releasePayloadItems(request);
 		}
-		if (response == null){
-			return;
+	}
+	
+	private void releasePayloadItems(PayloadRequest request) {
+		for (String itemId : request.itemIds) {
+			pendingPayloadItems.remove(itemId);
 		}
-		ItemPublishEvent<PayloadItem<SimplePayload>> event =
-			new ItemPublishEvent<PayloadItem<SimplePayload>>(nodeId, response);
-		handlePublishedItems(event);
 	}
 	
 	/**
-	 * Sends the payloads of the user, which are in the sendcache.
-	 * @throws UnknownEntityException Thrown when no pubsub node could be retrieved.
+	 * Returns the id of the subscription of this user to the given node.
+	 * The id is requested once and cached afterwards.
+	 * @param node Pubsub node to get subscription id for.
+	 * @return Subscription id or <code>null</code> if the subscription is not available.
 	 */
-	private void sendSavedPayloads() throws UnknownEntityException, InvalidDataException {
-		if (datawrapper == null) return;
-		Map<String, SimplePayload> payloads = datawrapper.getPayloadsToSend(userInfo.getBareJID());
-		for (String id:payloads.keySet()){
-			String spaceId = datawrapper.getSpaceForPayload(id);
-			if (spaceId == null) continue;
-			publish(spaceId, payloads.get(id));
+	private String getSubscriptionId(Node node) {
+		String subscriptionId = subscriptionIds.get(node.getId());
+		if (subscriptionId != null) {
+			return subscriptionId;
+		}
+		try {
+			List<Subscription> subscriptions = node.getSubscriptions();
+			if (subscriptions == null || subscriptions.isEmpty()) {
+				return null;
+			}
+			subscriptionId = subscriptions.get(0).getId();
+		} catch (XMPPException e) {
+			Log.d("DataHandler", "Failed to retrieve subscriptions for node " + node.getId() + ".", e);
+			return null;
+		}
+		if (subscriptionId != null) {
+			subscriptionIds.put(node.getId(), subscriptionId);
 		}
-		datawrapper.clearSendCache(userInfo.getBareJID());
+		return subscriptionId;
 	}
-
+	
 	/**
 	 * Changes the connection handler used for XMPP requests.
 	 * @param connectionHandler The connection handler to be used for requests.
@@ -644,7 +1142,6 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		for (String componentJID : registeredPubsubServiceComponents) {
 			removePubsubService(componentJID);
 		}
-		connection.removePacketInterceptor(pubsubInterceptor);
 		
 		// Unregister persistence services.
 		List<String> registeredPersistenceServiceComponents = new ArrayList<String>(persistenceServiceListeners.keySet());
@@ -655,6 +1152,13 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		// Unregister connection status listner.
 		connectionHandler.removeConnectionStatusListener(connectionStatusListener);
 		
+		// Nodes are bound to the previous connection.
+		synchronized (itemEventListenerReferences) {
+			nodeCache.clear();
+			subscriptionIds.clear();
+			itemEventListenerReferences.clear();
+		}
+		
 		// Update handler.
 		this.connectionHandler = connectionHandler;
 		this.connection = connectionHandler.getXMPPConnection();
@@ -663,7 +1167,6 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		for (String componentJID : registeredPubsubServiceComponents) {
 			registerPubsubService(componentJID);
 		}
-		this.setPubSubPacketInterceptor();
 		
 		// Register persistence services.
 		for (String componentJID : registeredPersistenceServiceComponents) {
@@ -680,7 +1183,7 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 */
 	@Override
 	public List<Space> getHandledSpaces() {
-		return Collections.unmodifiableList(handledSpaces);
+		return Collections.unmodifiableList(new ArrayList<Space>(handledSpaces.values()));
 	}
 
 	/**
@@ -691,21 +1194,15 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 */
 	@Override
 	public void registerSpace(String spaceId) throws UnknownEntityException {
-		Space space = null;
-		for (Space cachedSpace : spaceHandler.getCachedSpaces()) {
-			if (spaceId.equals(cachedSpace.getId())) {
-				space = cachedSpace;
-				break;
-			}
-		}
+		Space space = spaceDirectory.getSpace(spaceId);
 		if (space == null) space = spaceHandler.getSpace(spaceId);
 		if (space == null) {
 			throw new UnknownEntityException("Space could not be found: " + spaceId);
 		}
-		if (handledSpaces.contains(space)) {
+		if (handledSpaces.containsKey(space.getId().toLowerCase())) {
 			return;
 		} else {
-			handledSpaces.add(space);
+			handledSpaces.put(space.getId().toLowerCase(), space);
 			if (getMode() == Mode.ONLINE){
 				registerItemEventListener(space);
 			}
@@ -719,15 +1216,17 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 */
 	@Override
 	public void removeSpace(String spaceId) {
-		Space space = spaceHandler.getSpace(spaceId);
-		if (handledSpaces.remove(space)){
+		Space space = handledSpaces.remove(spaceId.toLowerCase());
+		if (space != null){
 			SpaceChannel channel = space.getPubSubChannel();
 			Map<String, String> properties = channel.getProperties();
+			cacheWriter.flush();
 			datawrapper.deleteCachedDataObjectsForSpace(properties.get("node"));
+			seenItemFilter.invalidate();
 			if (getMode() == Mode.ONLINE){
 				try {
 					LeafNode node = (LeafNode) getNode(properties.get("node"), properties.get("domain"));
-					node.removeItemEventListener(this);
+					releaseItemEventListener(node);
 				} catch (UnknownEntityException e) {
 					Log.d("DATAHANDLER", "An UnknownEntityException was thrown while removing a registered space.", e);
 				}
@@ -750,6 +1249,7 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		SpaceChannel channel = spaceHandler.getPubSubChannel(spaceId);
 		Map<String, String> properties = channel.getProperties();
 		String nodeId = properties.get("node");
+		cacheWriter.flush();
 		List<DataObject> objs = datawrapper.getCachedDataObjects(nodeId);
 		return Collections.unmodifiableList(objs);
 	}
@@ -770,17 +1270,58 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 					"DataHandler to the nodes of the registered Spaces.", e);
 		}
 		if (node != null){
-			node.addItemEventListener(this);
+			retainItemEventListener(node);
 		}
 		return node;
 	}
 	
+	/**
+	 * Registers the data handler as item listener of the given node, if not already done.
+	 * Each call has to be balanced by a call of {@link #releaseItemEventListener(Node)}.
+	 * @param node Pubsub node to listen to.
+	 */
+	private void retainItemEventListener(Node node) {
+		synchronized (itemEventListenerReferences) {
+			Integer references = itemEventListenerReferences.get(node.getId());
+			if (references == null) {
+				node.addItemEventListener(this);
+				references = 0;
+			}
+			itemEventListenerReferences.put(node.getId(), references + 1);
+		}
+	}
+	
+	/**
+	 * Releases a registration of the data handler as item listener of the given node.
+	 * The listener is removed when the last registration is released.
+	 * @param node Pubsub node to stop listening to.
+	 */
+	private void releaseItemEventListener(Node node) {
+		synchronized (itemEventListenerReferences) {
+			Integer references = itemEventListenerReferences.get(node.getId());
+			if (references == null) {
+				return;
+			}
+			if (references > 1) {
+				itemEventListenerReferences.put(node.getId(), references - 1);
+			} else {
+				itemEventListenerReferences.remove(node.getId());
+				node.removeItemEventListener(this);
+			}
+		}
+	}
+	
 	/**
 	 * Convenience method to parse an PayloadItem to an DataObject.
 	 * @param item The Item to parse.
 	 * @return The parsed DataObject.
 	 */
 	private DataObject parseItemToDataObject(PayloadItem<SimplePayload> item){
+		if (item.getPayload() instanceof ElementPayload) {
+			// already parsed by the item provider
+			Element elem = ((ElementPayload) item.getPayload()).getElement();
+			return new DataObjectBuilder(elem, item.getPayload().getNamespace()).build();
+		}
 		SAXBuilder reader = new SAXBuilder();
 		StringReader in = new StringReader(item.getPayload().toXML());
 		Document document = null;
@@ -807,13 +1348,7 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	public void setMode(Mode mode){
 		this.userWantedMode = mode;
 		if (userWantedMode == Mode.ONLINE && this.getMode() == Mode.ONLINE) {
-			try {
-				sendSavedPayloads();
-			} catch (UnknownEntityException e) {
-				Log.w("DataHandler", "An UnknownEntityException was thrown while trying to send saved payloads.", e);
-			} catch (InvalidDataException e) {
-				Log.w("DataHandler", "A cached data object could not be published as it was rejected.", e);
-			}
+			outbox.drain();
 		}
 	}
 
@@ -833,10 +1368,34 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	
 	/**
 	 * Deletes locally stored data.
+	 * Data objects received but not written to the cache yet are discarded. The database is kept open, as it is shared with
+	 * the other handlers and the background threads of this handler.
 	 */
 	@Override
 	public void clear() {
-		datawrapper.clearDataCache();		
+		cacheWriter.discardPending();
+		datawrapper.clearDataCache();
+		seenItemFilter.reset();
+	}
+	
+	/**
+	 * Stops all background threads of the handler and closes the local database.
+	 * Pending cache writes are completed, data objects not delivered to listeners yet are discarded.
+	 * Queued data objects of the outbox are kept and published when the application is started the next time.
+	 * The database is closed after the cache writer and the outbox stopped. It is opened again if another handler uses it.
+	 * The handler must not be used after it was shut down.
+	 */
+	public void shutdown() {
+		cacheWriter.shutdown();
+		for (DataObjectListener listener : new ArrayList<DataObjectListener>(listenerDispatchers.keySet())) {
+			removeDataObjectListener(listener);
+		}
+		for (DataObjectBatchListener listener : new ArrayList<DataObjectBatchListener>(batchListenerDispatchers.keySet())) {
+			removeDataObjectBatchListener(listener);
+		}
+		outbox.shutdown();
+		timeoutScheduler.shutdownNow();
+		datawrapper.close();
 	}
 
 	@Override
@@ -844,13 +1403,23 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		return dataObjectFilter;
 	}
 
+	/**
+	 * Sets a filter for the data objects delivered to the data object listeners.
+	 * The filter is compiled when set. Changes applied to the filter afterwards require the filter to be set again.
+	 * @param filter Filter to apply or <code>null</code> to deliver all data objects.
+	 */
 	@Override
 	public void setDataObjectFilter(DataObjectFilter filter) {
 		this.dataObjectFilter = filter;
+		this.compiledDataObjectFilter = filter != null ? FilterCompiler.compile(filter) : null;
 	}
 
 	@Override
 	public DataObject queryDataObjectById(final String objectId) throws UnsupportedOperationException, ConnectionStatusException, QueryException {
+		if (getMode() == Mode.OFFLINE) {
+			List<DataObject> resultList = queryDataObjectsFromCache(null, Collections.singleton(objectId), Collections.<SerializableDataObjectFilter>emptySet());
+			return resultList.isEmpty() ? null : resultList.get(0);
+		}
 		checkPersistenceServiceAvailabilty();
 		
 		IQ requestIQ = QueryRequestIQ.createQueryByObjectId(objectId);
@@ -866,6 +1435,9 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 
 	@Override
 	public List<DataObject> queryDataObjectsById(Set<String> objectIds, Set<SerializableDataObjectFilter> filters) throws UnsupportedOperationException, ConnectionStatusException, QueryException {
+		if (getMode() == Mode.OFFLINE) {
+			return queryDataObjectsFromCache(null, objectIds, filters);
+		}
 		checkPersistenceServiceAvailabilty();
 		
 		IQ requestIQ = QueryRequestIQ.createQueryByObjectIds(objectIds, filters);
@@ -889,6 +1461,7 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 	 */
 	private List<DataObject> queryDataObjectsFromPubSubNode(String spaceId, Set<SerializableDataObjectFilter> filters) throws QueryException {
 		List<DataObject> dataObjects = new ArrayList<DataObject>();
+		List<DataObjectCacheWriter.Entry> cacheEntries = new ArrayList<DataObjectCacheWriter.Entry>();
 		Space space = spaceHandler.getSpace(spaceId);
 		if (space == null) {
 			throw new QueryException(QueryException.Type.BAD_REQUEST, "Unknown space id: " + spaceId);
@@ -903,26 +1476,23 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		LeafNode node;
 		try {
 			node = (LeafNode) this.getNode(nodeId, pubsubJID);
+			cacheWriter.flush();
 			datawrapper.deleteCachedDataObjectsForSpace(node.getId());
-			List<PayloadItem<SimplePayload>> items = ((LeafNode) node).getItems(node.getSubscriptions().get(0).getId());
+			seenItemFilter.invalidate();
+			String subscriptionId = getSubscriptionId(node);
+			List<PayloadItem<SimplePayload>> items = subscriptionId != null ? node.<PayloadItem<SimplePayload>>getItems(subscriptionId) : node.<PayloadItem<SimplePayload>>getItems();
 			if (node != null && items != null) {
+				DataObjectFilter filter = FilterCompiler.compileAll(filters);
 				for (PayloadItem<SimplePayload> item : items) {
 					DataObject dataObject = this.parseItemToDataObject(item);
-					if (!filters.isEmpty()) {
-						boolean reject = false;
-						for (DataObjectFilter filter : filters) {
-							if (filter.isDataObjectValid(dataObject)) {
-								reject = true;
-								break;
-							}
-						}
-						if (reject) continue;
+					if (!filter.isDataObjectValid(dataObject)) {
+						continue;
 					}
 					dataObjects.add(dataObject);
-					if (!datawrapper.isDataObjectAlreadyCached(item.getId())){
-						datawrapper.saveDataObject(node.getId(), dataObject, item.getId());
-					}
+					cacheEntries.add(new DataObjectCacheWriter.Entry(node.getId(), item.getId(), dataObject));
+					seenItemFilter.add(item.getId());
 				} 
+				datawrapper.saveDataObjects(cacheEntries);
 			}
 		} catch (UnknownEntityException e) {
 			throw new QueryException(QueryException.Type.FAILURE, "Failed to retrieve pubsub node.", e);
@@ -932,8 +1502,54 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 		return dataObjects;
 	}
 
+	/**
+	 * Queries data objects stored in the local cache.
+	 * This method is used to answer queries while the handler is offline.
+	 * The filters are applied as SQL selection on the cached metadata. Only filters which cannot be expressed in SQL require the payloads to be validated.
+	 * @param spaceIds Identifiers of the spaces to query data objects for. If <code>null</code>, the data objects of all spaces are queried.
+	 * @param objectIds Identifiers of the data objects to query. If <code>null</code>, the data objects are not restricted by their identifier.
+	 * @param filters Filters to apply. May be empty.
+	 * @return List of data objects in the order they were received. May be empty.
+	 * @throws QueryException One of the given spaces is not known.
+	 */
+	private List<DataObject> queryDataObjectsFromCache(Set<String> spaceIds, Set<String> objectIds, Set<SerializableDataObjectFilter> filters) throws QueryException {
+		List<String> nodeIds = null;
+		if (spaceIds != null) {
+			nodeIds = new ArrayList<String>(spaceIds.size());
+			for (String spaceId : spaceIds) {
+				SpaceChannel channel;
+				try {
+					channel = spaceHandler.getPubSubChannel(spaceId);
+				} catch (UnknownEntityException e) {
+					throw new QueryException(QueryException.Type.BAD_REQUEST, "Unknown space id: " + spaceId, e);
+				}
+				if (channel == null) {
+					throw new QueryException(QueryException.Type.BAD_REQUEST, "The space " + spaceId + " has no pubsub channel.");
+				}
+				nodeIds.add(channel.getProperties().get("node"));
+			}
+		}
+		CacheQuery query = new CacheQuery(nodeIds, objectIds, filters);
+		cacheWriter.flush();
+		List<DataObject> dataObjects = datawrapper.queryCachedDataObjects(query.getSelection(), query.getSelectionArgs());
+		if (!query.isExact()) {
+			DataObjectFilter filter = FilterCompiler.compileAll(filters);
+			List<DataObject> validDataObjects = new ArrayList<DataObject>(dataObjects.size());
+			for (DataObject dataObject : dataObjects) {
+				if (filter.isDataObjectValid(dataObject)) {
+					validDataObjects.add(dataObject);
+				}
+			}
+			dataObjects = validDataObjects;
+		}
+		return dataObjects;
+	}
+
 	@Override
 	public List<DataObject> queryDataObjectsBySpace(String spaceId, Set<SerializableDataObjectFilter> filters) throws UnsupportedOperationException, ConnectionStatusException, QueryException {
+		if (getMode() == Mode.OFFLINE) {
+			return queryDataObjectsFromCache(Collections.singleton(spaceId), null, filters);
+		}
 		try {
 			checkPersistenceServiceAvailabilty();
 		} catch (UnsupportedOperationException e) {
@@ -954,6 +1570,9 @@ public class DataHandler implements OfflineModeHandler, de.imc.mirror.sdk.DataHa
 
 	@Override
 	public List<DataObject> queryDataObjectsBySpaces(Set<String> spaceIds, Set<SerializableDataObjectFilter> filters) throws UnsupportedOperationException, ConnectionStatusException, QueryException {
+		if (getMode() == Mode.OFFLINE) {
+			return queryDataObjectsFromCache(spaceIds, null, filters);
+		}
 		checkPersistenceServiceAvailabilty();
 		
 		IQ requestIQ = QueryRequestIQ.createQueryBySpaces(spaceIds, filters);
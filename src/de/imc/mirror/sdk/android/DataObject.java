@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Date;
 
 import org.jdom2.Attribute;
 import org.jdom2.Element;
@@ -16,6 +17,7 @@ import de.imc.mirror.sdk.android.cdm.CDMData_0_1;
 import de.imc.mirror.sdk.android.cdm.CDMData_0_2;
 import de.imc.mirror.sdk.android.cdm.CDMData_1_0;
 import de.imc.mirror.sdk.android.cdm.CDMData_2_0;
+import de.imc.mirror.sdk.android.utils.DatatypeConverter;
 
 /**
  * A data object represents an item published on a pubsub node of a space.
@@ -39,13 +41,37 @@ public class DataObject implements Serializable, de.imc.mirror.sdk.DataObject{
 	protected static final String CDM_0_2 = "0.2";
 	protected static final String CDM_1_0 = "1.0";
 	
+	protected static final String TIMESTAMP = "timestamp";
+	
 	private Element element;
 	private String elementName;
 	private CDMData cdmData;
+	private transient volatile boolean isCDMDataResolved;
+	private transient volatile String xmlString;
+	private transient volatile DataModel dataModel;
+	private transient volatile boolean isDataModelResolved;
+	private transient volatile Date timestamp;
+	private transient volatile boolean isTimestampResolved;
 	
+	/**
+	 * Creates a data object.
+	 * The CDM information, the data model, and the timestamp are resolved on first access.
+	 * @param builder Builder containing the root element of the data object.
+	 */
 	protected DataObject(DataObjectBuilder builder) {
 		this.elementName = builder.elementName;
 		this.element = builder.element;
+		this.isCDMDataResolved = false;
+		this.isDataModelResolved = false;
+		this.isTimestampResolved = false;
+	}
+	
+	/**
+	 * Creates the CDM object for the element of this data object.
+	 * @return CDM data object or <code>null</code> if the element does not validate against a CDM version.
+	 */
+	private CDMData resolveCDMData() {
+		CDMData cdmData;
 		String cdmVersion = this.getCDMVersion();
 		if (cdmVersion != null) {
 			switch (CDMVersion.getVersionForString(cdmVersion)) {
@@ -67,35 +93,59 @@ public class DataObject implements Serializable, de.imc.mirror.sdk.DataObject{
 		} else {
 			cdmData = guessCDMVersion(element);
 		}
+		return cdmData;
 	}
 	
 	/**
-	 * Tries to create a CDM object for the given data object element. Returns the highest CDM version which validates the element.  
+	 * Tries to create a CDM object for the given data object element. Returns the highest CDM version which validates the element.
+	 * The CDM versions only differ in required attributes: Version 0.1 and 0.2 require an id and a timestamp,
+	 * version 1.0 and 2.0 additionally require a model version. As the version pairs cannot be distinguished,
+	 * the attributes are read in a single pass and the higher version is chosen.
 	 * @param element Root element of a data object.
 	 * @return CDM data object or <code>null</code> if no CDM version can be applied. 
 	 */
 	private CDMData guessCDMVersion(Element element) {
-		if (CDMData_2_0.verify(element).size() == 0) {
+		boolean hasId = false, hasTimestamp = false, hasModelVersion = false;
+		for (Attribute attribute : element.getAttributes()) {
+			if (attribute.getNamespaceURI().length() != 0) {
+				continue;
+			}
+			String name = attribute.getName();
+			if (ID.equals(name)) {
+				hasId = !isBlank(attribute.getValue());
+			} else if (TIMESTAMP.equals(name)) {
+				hasTimestamp = !isBlank(attribute.getValue());
+			} else if (MODELVERSION.equals(name)) {
+				hasModelVersion = !isBlank(attribute.getValue());
+			}
+		}
+		if (!hasId || !hasTimestamp) {
+			return null;
+		} else if (hasModelVersion) {
 			return new CDMData_2_0(element);
-		} else if (CDMData_1_0.verify(element).size() == 0) {
-			return new CDMData_1_0(element);
-		} else if (CDMData_0_2.verify(element).size() == 0) {
-			return new CDMData_0_2(element);
-		} else if (CDMData_0_1.verify(element).size() == 0) {
-			return new CDMData_0_1(element);
 		} else {
-			return null;
+			return new CDMData_0_2(element);
 		}
 	}
+	
+	private static boolean isBlank(String value) {
+		return value == null || value.trim().length() == 0;
+	}
 
 	/**
 	 * Returns an XML string representing the data object.
+	 * The string is created once and reused for subsequent calls, as data objects are not intended to be modified.
 	 * @return The object as XML string.
 	 */
 	@Override
 	public String toString(){
-		XMLOutputter out = new XMLOutputter();
-		return out.outputString(element);
+		String xml = xmlString;
+		if (xml == null) {
+			XMLOutputter out = new XMLOutputter();
+			xml = out.outputString(element);
+			xmlString = xml;
+		}
+		return xml;
 	}
 	
 	/**
@@ -107,6 +157,8 @@ public class DataObject implements Serializable, de.imc.mirror.sdk.DataObject{
 	
 	/**
 	 * Returns the XML element for this data object.
+	 * The element must not be modified, as information derived from it, e.g., the XML string and the CDM information, is cached.
+	 * To create a modified data object, use a {@link DataObjectBuilder} with a copy of the element.
 	 * @return XML element. This is the payload published on the pubsub node.
 	 */
 	@Override
@@ -147,8 +199,42 @@ public class DataObject implements Serializable, de.imc.mirror.sdk.DataObject{
 	 */
 	@Override
 	public CDMData getCDMData() {
+		if (!isCDMDataResolved) {
+			synchronized (this) {
+				if (!isCDMDataResolved) {
+					cdmData = resolveCDMData();
+					isCDMDataResolved = true;
+				}
+			}
+		}
 		return cdmData;
 	}
+	
+	/**
+	 * Returns the time the data object was published.
+	 * Other than {@link CDMData#getTimeStamp()}, the method does not require the CDM information to be verified.
+	 * @return Point in time the data object was published or <code>null</code> if the timestamp is missing or invalid.
+	 */
+	public Date getTimestamp() {
+		if (!isTimestampResolved) {
+			if (isCDMDataResolved && cdmData != null) {
+				timestamp = cdmData.getTimeStamp();
+			} else {
+				String timestampString = element.getAttributeValue(TIMESTAMP);
+				Date parsedTimestamp = null;
+				if (timestampString != null) {
+					try {
+						parsedTimestamp = DatatypeConverter.parseDateTime(timestampString).getTime();
+					} catch (IllegalArgumentException e) {
+						// invalid timestamp
+					}
+				}
+				timestamp = parsedTimestamp;
+			}
+			isTimestampResolved = true;
+		}
+		return timestamp;
+	}
 
 	/**
 	 * Returns the namespace URI of the data object.
@@ -176,6 +262,14 @@ public class DataObject implements Serializable, de.imc.mirror.sdk.DataObject{
 	 */
 	@Override
 	public DataModel getDataModel(){
+		if (!isDataModelResolved) {
+			dataModel = resolveDataModel();
+			isDataModelResolved = true;
+		}
+		return dataModel;
+	}
+	
+	private DataModel resolveDataModel(){
 		Namespace ns = element.getNamespace("xsi");
 		Attribute dataAttribute = element.getAttribute("schemaLocation", ns);
 		DataModel result = null;
@@ -189,13 +283,14 @@ public class DataObject implements Serializable, de.imc.mirror.sdk.DataObject{
 	
 	private synchronized void writeObject(ObjectOutputStream s) throws IOException{
 		s.writeObject(element);
-		s.writeObject(cdmData);
+		s.writeObject(getCDMData());
 	}
 	
 	private synchronized void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException{
 		this.element = (Element) s.readObject();
 		this.cdmData = (CDMData) s.readObject();
 		this.elementName = element.getName();
+		this.isCDMDataResolved = true;
 	}
 
 }
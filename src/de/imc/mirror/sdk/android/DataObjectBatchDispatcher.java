@@ -0,0 +1,110 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.android.utils.DaemonThreadFactory;
+
+/**
+ * Delivers data objects to a single batch listener on a dedicated thread.
+ * The data objects of a space are collected until the batch is full or the coalescing window expired.
+ * Without coalescing window, the data objects of each notification are delivered as one batch. 
+ */
+class DataObjectBatchDispatcher {
+	private final DataObjectBatchListener listener;
+	private final int maxBatchSize;
+	private final long maxDelay;
+	private final ScheduledExecutorService executor;
+	private final Map<String, List<DataObject>> pendingBatches; // <space id, data objects>
+	private final Map<String, ScheduledFuture<?>> scheduledDeliveries; // <space id, delivery task>
+	
+	/**
+	 * Creates a dispatcher for the given batch listener.
+	 * @param listener Listener to deliver the data objects to.
+	 * @param maxBatchSize Number of data objects which trigger an immediate delivery. <code>0</code> for no limit.
+	 * @param maxDelay Coalescing window in milliseconds. <code>0</code> to deliver the data objects of each notification immediately.
+	 */
+	DataObjectBatchDispatcher(DataObjectBatchListener listener, int maxBatchSize, long maxDelay) {
+		this.listener = listener;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = maxDelay;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("DataObjectBatchListener"));
+		this.pendingBatches = new HashMap<String, List<DataObject>>();
+		this.scheduledDeliveries = new HashMap<String, ScheduledFuture<?>>();
+	}
+	
+	/**
+	 * Adds data objects received with a single notification.
+	 * @param dataObjects Data objects to deliver. The list must not be modified afterwards.
+	 * @param spaceId Identifier of the space the data objects were published on.
+	 */
+	synchronized void dispatch(List<DataObject> dataObjects, final String spaceId) {
+		if (executor.isShutdown()) {
+			return;
+		}
+		if (maxDelay <= 0) {
+			deliver(dataObjects, spaceId);
+			return;
+		}
+		List<DataObject> batch = pendingBatches.get(spaceId);
+		if (batch == null) {
+			batch = new ArrayList<DataObject>(dataObjects);
+			pendingBatches.put(spaceId, batch);
+			scheduledDeliveries.put(spaceId, executor.schedule(new Runnable() {
+				@Override
+				public void run() {
+					deliverPending(spaceId);
+				}
+			}, maxDelay, TimeUnit.MILLISECONDS));
+		} else {
+			batch.addAll(dataObjects);
+		}
+		if (maxBatchSize > 0 && batch.size() >= maxBatchSize) {
+			ScheduledFuture<?> scheduledDelivery = scheduledDeliveries.remove(spaceId);
+			if (scheduledDelivery != null) {
+				scheduledDelivery.cancel(false);
+			}
+			deliver(pendingBatches.remove(spaceId), spaceId);
+		}
+	}
+	
+	/**
+	 * Stops the delivery. Data objects not delivered yet are discarded.
+	 */
+	synchronized void shutdown() {
+		executor.shutdownNow();
+		pendingBatches.clear();
+		scheduledDeliveries.clear();
+	}
+	
+	private synchronized void deliverPending(String spaceId) {
+		scheduledDeliveries.remove(spaceId);
+		List<DataObject> batch = pendingBatches.remove(spaceId);
+		if (batch != null) {
+			deliver(batch, spaceId);
+		}
+	}
+	
+	private void deliver(List<DataObject> dataObjects, final String spaceId) {
+		final List<DataObject> batch = Collections.unmodifiableList(dataObjects);
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					listener.handleDataObjects(batch, spaceId);
+				} catch (RuntimeException e) {
+					Log.w("DataObjectBatchDispatcher", "A data object batch listener threw an exception.", e);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,18 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.List;
+
+import de.imc.mirror.sdk.DataObject;
+
+/**
+ * Listener for data objects published on spaces handled by a data handler, receiving the data objects in batches.
+ * A batch contains at least all data objects of a single pubsub notification and only data objects of a single space. 
+ */
+public interface DataObjectBatchListener {
+	/**
+	 * Handles a batch of published data objects.
+	 * @param dataObjects Data objects in the order they were received. The list is not modifiable.
+	 * @param spaceId Identifier of the space the data objects were published on.
+	 */
+	void handleDataObjects(List<DataObject> dataObjects, String spaceId);
+}
@@ -20,12 +20,15 @@ import de.imc.mirror.sdk.config.NamespaceConfig;
 
 /**
  * Builder for data objects.
+ * The data objects built do not change when the builder is modified afterwards: The root element is copied before the first
+ * modification following a call of {@link #build()}.
  * @author nicolas.mach(at)im-c.de
  */
 public class DataObjectBuilder {
 	protected final String elementName;
 	protected final String namespace;
 	protected Element element;
+	private boolean isElementBuilt = false; // the element is used by a data object and has to be copied before it is modified
 	
 	/**
 	 * Builder for data objects.
@@ -40,6 +43,7 @@ public class DataObjectBuilder {
 	
 	/**
 	 * Builder for building a data object.
+	 * The given element is used without copying it. Therefore, it must not be modified after a data object was built.
 	 * @param element A XML element to be used as root element.
 	 * @param namespace The namespace for the data object.
 	 */
@@ -56,6 +60,7 @@ public class DataObjectBuilder {
 	 * @return This builder instance.
 	 */
 	public DataObjectBuilder setCDMData(CDMData cdmData){
+		Element element = getModifiableElement();
 		cdmData.applyToElement(element);
 		CDMVersion version = cdmData.getCDMVersion();
 		element.setAttribute("cdmVersion", version.getVersionString());
@@ -70,6 +75,7 @@ public class DataObjectBuilder {
 	 * @return This builder instance.
 	 */
 	public DataObjectBuilder addCDTCreationInfo(Date date, String person, String application) {
+		Element element = getModifiableElement();
 		element.addNamespaceDeclaration(Namespace.getNamespace("cdt", NamespaceConfig.MODEL_CDT));
 		Element creationInfoElement = new Element("creationInfo", this.namespace);
 		if (date != null) {
@@ -125,7 +131,7 @@ public class DataObjectBuilder {
 			}	
 		}
 		
-		element.addContent(newElem);
+		getModifiableElement().addContent(newElem);
 		return this;
 	}
 	
@@ -164,7 +170,7 @@ public class DataObjectBuilder {
 				newElem.setAttribute(attrName, attributes.get(attrName));
 			}
 		}
-		element.addContent(newElem);
+		getModifiableElement().addContent(newElem);
 		
 		return this;
 	}
@@ -175,7 +181,7 @@ public class DataObjectBuilder {
 	 * @return This builder instance.
 	 */
 	public DataObjectBuilder addElement(Element element) {
-		this.element.addContent(element);
+		getModifiableElement().addContent(element);
 		return this;
 	}
 
@@ -186,7 +192,7 @@ public class DataObjectBuilder {
 	 * @return The modified Builder.
 	 */
 	public DataObjectBuilder setAttribute(String attributeName, String value) {
-		element.setAttribute(attributeName, value);
+		getModifiableElement().setAttribute(attributeName, value);
 		return this;
 	}
 	
@@ -196,6 +202,7 @@ public class DataObjectBuilder {
 	 * @return The modified Builder.
 	 */
 	public DataObjectBuilder setAttributes(Map<String, String> attributes) {
+		Element element = getModifiableElement();
 		for (String name:attributes.keySet()){
 			element.setAttribute(name, attributes.get(name));
 		}
@@ -204,17 +211,33 @@ public class DataObjectBuilder {
 	
 	/**
 	 * Returns the root element for the dataobject to be build.
+	 * Modifications of the element do not affect the data objects built before.
 	 * @return The root element.
 	 */
 	public Element getRootElement() {
+		return getModifiableElement();
+	}
+	
+	/**
+	 * Returns the root element to apply a modification to.
+	 * If the element is used by a data object, it is replaced by a copy first.
+	 * @return Root element which is not used by any data object.
+	 */
+	private Element getModifiableElement() {
+		if (isElementBuilt) {
+			element = element.clone();
+			isElementBuilt = false;
+		}
 		return element;
 	}
 	
 	/**
 	 * Builds the data object.
+	 * The data object uses the current root element. It is not copied unless the builder is modified afterwards.
 	 * @return A new data object based on the given information.
 	 */
 	public DataObject build() {
+		isElementBuilt = true;
 		return new DataObject(this);
 	}
 }
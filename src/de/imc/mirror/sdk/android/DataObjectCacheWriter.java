@@ -0,0 +1,154 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.android.utils.DaemonThreadFactory;
+
+/**
+ * Writes received data objects to the local cache in batches.
+ * Data objects are collected and written in a single transaction as soon as the batch is full or the maximum delay expired.
+ * Data objects already stored in the cache are skipped.
+ */
+class DataObjectCacheWriter {
+	private static final long SHUTDOWN_TIMEOUT = 5000l;
+	
+	/**
+	 * Data object waiting to be written to the cache.
+	 */
+	static class Entry {
+		final String nodeId;
+		final String id;
+		final DataObject dataObject;
+		
+		/**
+		 * Creates a cache entry.
+		 * @param nodeId Identifier of the pubsub node the data object was published on.
+		 * @param id Identifier of the pubsub item.
+		 * @param dataObject Data object to store.
+		 */
+		Entry(String nodeId, String id, DataObject dataObject) {
+			this.nodeId = nodeId;
+			this.id = id;
+			this.dataObject = dataObject;
+		}
+	}
+	
+	private final DataWrapper datawrapper;
+	private final int maxBatchSize;
+	private final long maxDelay;
+	private final ScheduledExecutorService executor;
+	private final Runnable flushTask;
+	private final Object writeMonitor; // held while a batch is written
+	private List<Entry> pendingEntries;
+	private ScheduledFuture<?> scheduledFlush;
+	
+	/**
+	 * Creates a cache writer.
+	 * @param datawrapper Wrapper for the local database.
+	 * @param maxBatchSize Number of data objects which trigger an immediate write.
+	 * @param maxDelay Maximum time in milliseconds a data object waits before it is written.
+	 */
+	DataObjectCacheWriter(DataWrapper datawrapper, int maxBatchSize, long maxDelay) {
+		this.datawrapper = datawrapper;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = maxDelay;
+		this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("CacheWriter"));
+		this.flushTask = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					flush();
+				} catch (RuntimeException e) {
+					Log.w("DataObjectCacheWriter", "Failed to write data objects to the cache.", e);
+				}
+			}
+		};
+		this.pendingEntries = new ArrayList<Entry>(maxBatchSize);
+		this.writeMonitor = new Object();
+	}
+	
+	/**
+	 * Adds a data object to the current batch.
+	 * The data object is ignored if the cache writer was shut down.
+	 * @param nodeId Identifier of the pubsub node the data object was published on.
+	 * @param id Identifier of the pubsub item.
+	 * @param dataObject Data object to store.
+	 */
+	synchronized void add(String nodeId, String id, DataObject dataObject) {
+		if (executor.isShutdown()) {
+			// items received after the shutdown are not cached
+			return;
+		}
+		pendingEntries.add(new Entry(nodeId, id, dataObject));
+		if (pendingEntries.size() >= maxBatchSize) {
+			if (scheduledFlush != null) {
+				scheduledFlush.cancel(false);
+			}
+			scheduledFlush = executor.schedule(flushTask, 0, TimeUnit.MILLISECONDS);
+		} else if (scheduledFlush == null) {
+			scheduledFlush = executor.schedule(flushTask, maxDelay, TimeUnit.MILLISECONDS);
+		}
+	}
+	
+	/**
+	 * Writes all pending data objects to the cache.
+	 * The method returns when the data objects are written. 
+	 */
+	void flush() {
+		synchronized (writeMonitor) {
+			List<Entry> entries;
+			synchronized (this) {
+				if (scheduledFlush != null) {
+					scheduledFlush.cancel(false);
+					scheduledFlush = null;
+				}
+				if (pendingEntries.isEmpty()) {
+					return;
+				}
+				entries = pendingEntries;
+				pendingEntries = new ArrayList<Entry>(maxBatchSize);
+			}
+			datawrapper.saveDataObjects(entries);
+		}
+	}
+	
+	/**
+	 * Writes all pending data objects and stops the background thread.
+	 * The method returns when the background thread is stopped, so that the cache writer does not access the database anymore.
+	 */
+	void shutdown() {
+		flush();
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				Log.w("DataObjectCacheWriter", "The cache writer thread did not stop within " + SHUTDOWN_TIMEOUT + " ms.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Discards all data objects not written yet.
+	 * If a batch is currently written, the method waits until it is finished.
+	 * Therefore, no data object added before is written to the cache after the method returned.
+	 */
+	void discardPending() {
+		synchronized (writeMonitor) {
+			synchronized (this) {
+				if (scheduledFlush != null) {
+					scheduledFlush.cancel(false);
+					scheduledFlush = null;
+				}
+				pendingEntries.clear();
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.DataObjectListener;
+import de.imc.mirror.sdk.android.utils.DaemonThreadFactory;
+
+/**
+ * Delivers data objects to a single listener on a dedicated thread.
+ * Received data objects are queued in a bounded queue, so the receiving thread is not blocked by slow listeners.
+ * If the queue is full, the configured overflow policy is applied.
+ */
+class DataObjectDispatcher {
+	private static final ThreadFactory THREAD_FACTORY = new DaemonThreadFactory("DataObjectListener");
+	
+	/**
+	 * Data object waiting for delivery.
+	 */
+	private static class Event {
+		final DataObject dataObject;
+		final String spaceId;
+		final long receiptTime;
+		
+		Event(DataObject dataObject, String spaceId) {
+			this.dataObject = dataObject;
+			this.spaceId = spaceId;
+			this.receiptTime = System.currentTimeMillis();
+		}
+	}
+	
+	private final DataObjectListener listener;
+	private final int capacity;
+	private final DispatchOverflowPolicy overflowPolicy;
+	private final BlockingQueue<Event> queue;
+	private final AtomicLong deliveredCount;
+	private final AtomicLong droppedCount;
+	private volatile long lastLag;
+	private volatile long maxLag;
+	private volatile boolean isRunning;
+	private Thread worker;
+	
+	/**
+	 * Creates a dispatcher for the given listener. The dispatcher has to be started before data objects are delivered. 
+	 * @param listener Listener to deliver the data objects to.
+	 * @param capacity Maximum number of data objects waiting for delivery.
+	 * @param overflowPolicy Policy applied when a data object is received while the queue is full.
+	 */
+	DataObjectDispatcher(DataObjectListener listener, int capacity, DispatchOverflowPolicy overflowPolicy) {
+		this.listener = listener;
+		this.capacity = capacity;
+		this.overflowPolicy = overflowPolicy;
+		this.queue = new LinkedBlockingQueue<Event>(capacity);
+		this.deliveredCount = new AtomicLong(0);
+		this.droppedCount = new AtomicLong(0);
+		this.isRunning = false;
+	}
+	
+	/**
+	 * Starts the delivery thread.
+	 */
+	synchronized void start() {
+		if (isRunning) {
+			return;
+		}
+		isRunning = true;
+		worker = THREAD_FACTORY.newThread(new Runnable() {
+			@Override
+			public void run() {
+				deliverQueuedEvents();
+			}
+		});
+		worker.start();
+	}
+	
+	/**
+	 * Stops the delivery thread. Data objects not delivered yet are discarded.
+	 */
+	synchronized void shutdown() {
+		isRunning = false;
+		if (worker != null) {
+			worker.interrupt();
+			worker = null;
+		}
+		queue.clear();
+	}
+	
+	/**
+	 * Queues a data object for delivery.
+	 * @param dataObject Data object to deliver.
+	 * @param spaceId Identifier of the space the data object was published on.
+	 */
+	void dispatch(DataObject dataObject, String spaceId) {
+		Event event = new Event(dataObject, spaceId);
+		switch (overflowPolicy) {
+		case BLOCK:
+			try {
+				queue.put(event);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				droppedCount.incrementAndGet();
+			}
+			break;
+		case DROP_NEWEST:
+			if (!queue.offer(event)) {
+				droppedCount.incrementAndGet();
+			}
+			break;
+		case DROP_OLDEST:
+			while (!queue.offer(event)) {
+				if (queue.poll() != null) {
+					droppedCount.incrementAndGet();
+				}
+			}
+			break;
+		}
+	}
+	
+	/**
+	 * Returns a snapshot of the delivery statistics.
+	 * @return Statistics of this dispatcher.
+	 */
+	ListenerStatistics getStatistics() {
+		return new ListenerStatistics(queue.size(), capacity, deliveredCount.get(), droppedCount.get(), lastLag, maxLag);
+	}
+	
+	private void deliverQueuedEvents() {
+		while (isRunning) {
+			Event event;
+			try {
+				event = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			long lag = System.currentTimeMillis() - event.receiptTime;
+			lastLag = lag;
+			if (lag > maxLag) {
+				maxLag = lag;
+			}
+			try {
+				listener.handleDataObject(event.dataObject, event.spaceId);
+			} catch (RuntimeException e) {
+				Log.w("DataObjectDispatcher", "A data object listener threw an exception.", e);
+			}
+			deliveredCount.incrementAndGet();
+		}
+	}
+}
@@ -2,12 +2,15 @@ package de.imc.mirror.sdk.android;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.xml.datatype.DatatypeFactory;
 import javax.xml.datatype.Duration;
@@ -32,6 +35,7 @@ import de.imc.mirror.sdk.SpaceMember;
 import de.imc.mirror.sdk.SpaceMember.Role;
 import de.imc.mirror.sdk.android.data.ChannelsTable;
 import de.imc.mirror.sdk.android.data.DataDB;
+import de.imc.mirror.sdk.android.data.DataObjectMetadata;
 import de.imc.mirror.sdk.android.data.DataTable;
 import de.imc.mirror.sdk.android.data.MembersTable;
 import de.imc.mirror.sdk.android.data.SendTable;
@@ -39,12 +43,18 @@ import de.imc.mirror.sdk.android.data.SpacesTable;
 
 /**
  * Wrapperclass to access the Caches used by the Handlers.
+ * Read operations run in parallel, modifications are serialized but do not block read operations.
  * @author mach
  *
  */
 public class DataWrapper {
 
 	private DataDB scheme;
+	private SQLiteDatabase database;
+	private final ReentrantReadWriteLock handleLock; // shared by all operations, exclusive for closing the database
+	private final ReentrantLock writeLock; // serializes modifications, reads are not blocked
+	private final Set<String> usersWithResetPayloads; // users for which the payloads in flight were queued again, guarded by writeLock
+	private boolean isClosed = false; // guarded by this
 	private static DataWrapper instance;
 	
 	/**
@@ -54,6 +64,56 @@ public class DataWrapper {
 	 */
 	private DataWrapper(Context context, String dbName) {
 		scheme = new DataDB(context, dbName);
+		handleLock = new ReentrantReadWriteLock();
+		writeLock = new ReentrantLock();
+		usersWithResetPayloads = new HashSet<String>();
+	}
+	
+	/**
+	 * Returns the database handle. The database is opened with the first call and kept open until {@link #close()} is called.
+	 * If supported by the platform, write-ahead logging is enabled.
+	 * @return Writable database.
+	 */
+	private synchronized SQLiteDatabase getDatabase() {
+		if (database == null || !database.isOpen()) {
+			if (isClosed) {
+				Log.d("DataWrapper", "The database is opened again after it was closed.");
+				isClosed = false;
+			}
+			database = scheme.getWritableDatabase();
+			try {
+				// available since API level 11
+				Method enableWriteAheadLogging = SQLiteDatabase.class.getMethod("enableWriteAheadLogging");
+				enableWriteAheadLogging.invoke(database);
+			} catch (NoSuchMethodException e) {
+				// not supported, keep journal mode
+			} catch (Exception e) {
+				Log.d("DataWrapper", "Failed to enable write-ahead logging.", e);
+			}
+		}
+		return database;
+	}
+	
+	/**
+	 * Closes the database handle.
+	 * The method waits for running operations, but does not prevent new ones: As the wrapper is shared by all handlers,
+	 * the database is opened again when the wrapper is used afterwards. Therefore, the caller has to stop its background
+	 * threads using the wrapper before, see {@link DataHandler#shutdown()}. The handlers do not close the database when clearing data.
+	 */
+	protected void close() {
+		handleLock.writeLock().lock();
+		try {
+			synchronized (this) {
+				if (database != null) {
+					database.close();
+					database = null;
+				}
+				scheme.close();
+				isClosed = true;
+			}
+		} finally {
+			handleLock.writeLock().unlock();
+		}
 	}
 	
 	/**
@@ -81,24 +141,30 @@ public class DataWrapper {
 	 * Deletes all cached spaces for the user.
 	 * @param user The user to delete the spaces for.
 	 */
-	protected synchronized void deleteCachedSpacesForUser(String user){
-		List<String> spaceIds = getSpaceIdsForUser(user);
-		if (spaceIds.size() > 0){
-			List<String> spaceIdsOfOthers = getSpacesAlsoSavedForOthers(spaceIds, user);
-			spaceIds.removeAll(spaceIdsOfOthers);
-		}
-		SQLiteDatabase db = scheme.getWritableDatabase();
+	protected void deleteCachedSpacesForUser(String user){
+		handleLock.readLock().lock();
+		writeLock.lock();
 		try {
-			db.beginTransaction();
-			db.execSQL("DELETE FROM " + SpacesTable.TABLE_NAME + " WHERE " + SpacesTable.USER + " ='" + user + "';");
-			for (String spaceId:spaceIds){
-				db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME + " WHERE " + ChannelsTable.SPACE + " ='" + spaceId + "';");
-				db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME + " WHERE " + MembersTable.SPACE + " ='" + spaceId + "';");
+			List<String> spaceIds = getSpaceIdsForUser(user);
+			if (spaceIds.size() > 0){
+				List<String> spaceIdsOfOthers = getSpacesAlsoSavedForOthers(spaceIds, user);
+				spaceIds.removeAll(spaceIdsOfOthers);
+			}
+			SQLiteDatabase db = getDatabase();
+			try {
+				db.beginTransaction();
+				db.execSQL("DELETE FROM " + SpacesTable.TABLE_NAME + " WHERE " + SpacesTable.USER + " ='" + user + "';");
+				for (String spaceId:spaceIds){
+					db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME + " WHERE " + ChannelsTable.SPACE + " ='" + spaceId + "';");
+					db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME + " WHERE " + MembersTable.SPACE + " ='" + spaceId + "';");
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
 			}
-			db.setTransactionSuccessful();
 		} finally {
-			db.endTransaction();
-			db.close();
+			writeLock.unlock();
+			handleLock.readLock().unlock();
 		}
 	}
 	
@@ -106,17 +172,23 @@ public class DataWrapper {
 	 * Deletes all cached Information of a space.
 	 * @param spaceId The id of the space.
 	 */
-	protected synchronized void deleteCachedSpace(String spaceId){
-		SQLiteDatabase db = scheme.getWritableDatabase();
+	protected void deleteCachedSpace(String spaceId){
+		handleLock.readLock().lock();
+		writeLock.lock();
 		try {
-			db.beginTransaction();
-			db.execSQL("DELETE FROM " + SpacesTable.TABLE_NAME + " WHERE " + SpacesTable.SPACE_ID + " ='" + spaceId + "';");
-			db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME + " WHERE " + ChannelsTable.SPACE + " ='" + spaceId + "';");
-			db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME + " WHERE " + MembersTable.SPACE + " ='" + spaceId + "';");
-			db.setTransactionSuccessful();
+			SQLiteDatabase db = getDatabase();
+			try {
+				db.beginTransaction();
+				db.execSQL("DELETE FROM " + SpacesTable.TABLE_NAME + " WHERE " + SpacesTable.SPACE_ID + " ='" + spaceId + "';");
+				db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME + " WHERE " + ChannelsTable.SPACE + " ='" + spaceId + "';");
+				db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME + " WHERE " + MembersTable.SPACE + " ='" + spaceId + "';");
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
 		} finally {
-			db.endTransaction();
-			db.close();
+			writeLock.unlock();
+			handleLock.readLock().unlock();
 		}
 	}
 	
@@ -126,30 +198,34 @@ public class DataWrapper {
 	 * @param user The user to exclude from the search.
 	 * @return A list of all ids of the spaces which are also cached for other users.
 	 */
-	private synchronized List<String> getSpacesAlsoSavedForOthers(List<String> spaceIds, String user){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		StringBuilder builder = new StringBuilder();
-		for (int i=0; i<spaceIds.size();i++){
-			String spaceId = spaceIds.get(i);
-			builder.append(SpacesTable.SPACE_ID + "='");
-			builder.append(spaceId);
-			builder.append("' ");
-			if (i != spaceIds.size()-1){
-				builder.append("OR ");
+	private List<String> getSpacesAlsoSavedForOthers(List<String> spaceIds, String user){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			StringBuilder builder = new StringBuilder();
+			for (int i=0; i<spaceIds.size();i++){
+				String spaceId = spaceIds.get(i);
+				builder.append(SpacesTable.SPACE_ID + "='");
+				builder.append(spaceId);
+				builder.append("' ");
+				if (i != spaceIds.size()-1){
+					builder.append("OR ");
+				}
 			}
+			String query = "SELECT " + SpacesTable.SPACE_ID + " FROM " + SpacesTable.TABLE_NAME 
+							+ " WHERE NOT(" + SpacesTable.USER + "='" + user + "') AND (" + 
+							builder.toString() + ");";
+			Cursor c = db.rawQuery(query, null);
+			List<String> result = new ArrayList<String>();
+			while(c.moveToNext()){
+				String spaceId = c.getString(c.getColumnIndex(SpacesTable.SPACE_ID));
+				result.add(spaceId);
+			}
+			c.close();
+			return result;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		String query = "SELECT " + SpacesTable.SPACE_ID + " FROM " + SpacesTable.TABLE_NAME 
-						+ " WHERE NOT(" + SpacesTable.USER + "='" + user + "') AND (" + 
-						builder.toString() + ");";
-		Cursor c = db.rawQuery(query, null);
-		List<String> result = new ArrayList<String>();
-		while(c.moveToNext()){
-			String spaceId = c.getString(c.getColumnIndex(SpacesTable.SPACE_ID));
-			result.add(spaceId);
-		}
-		c.close();
-		db.close();
-		return result;
 	}
 	
 	/**
@@ -157,19 +233,23 @@ public class DataWrapper {
 	 * @param user The user to get the spaceIds for.
 	 * @return A list of spaceIds.
 	 */
-	private synchronized List<String> getSpaceIdsForUser(String user){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "SELECT " + SpacesTable.SPACE_ID + " FROM " + SpacesTable.TABLE_NAME 
-						+ " WHERE " + SpacesTable.USER + "='" + user + "';";
-		Cursor c = db.rawQuery(query, null);
-		List<String> spaceIds = new ArrayList<String>();
-		while (c.moveToNext()){
-			String spaceId = c.getString(c.getColumnIndex(SpacesTable.SPACE_ID));
-			spaceIds.add(spaceId);
+	private List<String> getSpaceIdsForUser(String user){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "SELECT " + SpacesTable.SPACE_ID + " FROM " + SpacesTable.TABLE_NAME 
+							+ " WHERE " + SpacesTable.USER + "='" + user + "';";
+			Cursor c = db.rawQuery(query, null);
+			List<String> spaceIds = new ArrayList<String>();
+			while (c.moveToNext()){
+				String spaceId = c.getString(c.getColumnIndex(SpacesTable.SPACE_ID));
+				spaceIds.add(spaceId);
+			}
+			c.close();
+			return spaceIds;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return spaceIds;
 	}
 	
 	/**
@@ -178,48 +258,54 @@ public class DataWrapper {
 	 * @param space The space to cache.
 	 * @param user The user to cache the space for.
 	 */
-	protected synchronized void saveSpace(Space space, String user){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.beginTransaction();
-		try{
-			ContentValues values = new ContentValues();
-			values.put(SpacesTable.SPACE_ID, space.getId());
-			values.put(SpacesTable.SPACE_NAME, space.getName());
-			values.put(SpacesTable.SPACE_DOMAIN, space.getDomain());
-			values.put(SpacesTable.SPACE_TYPE, space.getType().toString());
-			values.put(SpacesTable.SPACE_PERSISTENTTYPE, space.getPersistenceType().name());
-			if (space.getPersistenceDuration() != null) {
-				values.put(SpacesTable.SPACE_PERSISTENTDURATION, space.getPersistenceDuration().toString());
-			} else {
-				values.putNull(SpacesTable.SPACE_PERSISTENTDURATION);
-			}
-			values.put(SpacesTable.USER, user);
-			db.insert(SpacesTable.TABLE_NAME, null, values);
-			Set<SpaceChannel> channels = space.getChannels();
-			for (SpaceChannel channel:channels){
-				for (String property:channel.getProperties().keySet()){
+	protected void saveSpace(Space space, String user){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.beginTransaction();
+			try{
+				ContentValues values = new ContentValues();
+				values.put(SpacesTable.SPACE_ID, space.getId());
+				values.put(SpacesTable.SPACE_NAME, space.getName());
+				values.put(SpacesTable.SPACE_DOMAIN, space.getDomain());
+				values.put(SpacesTable.SPACE_TYPE, space.getType().toString());
+				values.put(SpacesTable.SPACE_PERSISTENTTYPE, space.getPersistenceType().name());
+				if (space.getPersistenceDuration() != null) {
+					values.put(SpacesTable.SPACE_PERSISTENTDURATION, space.getPersistenceDuration().toString());
+				} else {
+					values.putNull(SpacesTable.SPACE_PERSISTENTDURATION);
+				}
+				values.put(SpacesTable.USER, user);
+				db.insertWithOnConflict(SpacesTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+				Set<SpaceChannel> channels = space.getChannels();
+				for (SpaceChannel channel:channels){
+					for (String property:channel.getProperties().keySet()){
+						values = new ContentValues();
+						values.put(ChannelsTable.TYPE, channel.getType());
+						values.put(ChannelsTable.SPACE, space.getId());
+						values.put(ChannelsTable.KEY, property);
+						values.put(ChannelsTable.VALUE, channel.getProperties().get(property));
+						db.insertWithOnConflict(ChannelsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+					}
+				}
+				for (SpaceMember member:space.getMembers()){
 					values = new ContentValues();
-					values.put(ChannelsTable.TYPE, channel.getType());
-					values.put(ChannelsTable.SPACE, space.getId());
-					values.put(ChannelsTable.KEY, property);
-					values.put(ChannelsTable.VALUE, channel.getProperties().get(property));
-					db.insert(ChannelsTable.TABLE_NAME, null, values);
+					values.put(MembersTable.ROLE, member.getRole().name());
+					values.put(MembersTable.SPACE, space.getId());
+					values.put(MembersTable.BAREJID, member.getJID());
+					db.insertWithOnConflict(MembersTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
 				}
-			}
-			for (SpaceMember member:space.getMembers()){
-				values = new ContentValues();
-				values.put(MembersTable.ROLE, member.getRole().name());
-				values.put(MembersTable.SPACE, space.getId());
-				values.put(MembersTable.BAREJID, member.getJID());
-				db.insert(MembersTable.TABLE_NAME, null, values);
-			}
-			db.setTransactionSuccessful();
-		}catch (Exception e){
-			Log.d("DataWrapper", "An Exception was thrown while saving a space", e);
-		}finally{
-			db.endTransaction();
-			db.close();
-		}	
+				db.setTransactionSuccessful();
+			}catch (Exception e){
+				Log.d("DataWrapper", "An Exception was thrown while saving a space", e);
+			}finally{
+				db.endTransaction();
+			}	
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 	
 	/**
@@ -227,142 +313,296 @@ public class DataWrapper {
 	 * @param user The user to get the spaces for.
 	 * @return A list of spaces.
 	 */
-	protected synchronized List<Space> getCachedSpacesForUser(String user){
-		List<Space> spaces = new ArrayList<Space>();
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select * FROM " + SpacesTable.TABLE_NAME + " WHERE " +
-								SpacesTable.USER + "='" + user + "';";
-		Cursor c = db.rawQuery(query, null);
-		while(c.moveToNext()){
-			String spaceId = c.getString(c.getColumnIndex(SpacesTable.SPACE_ID));
-			String membersQuery = "SELECT * FROM " + MembersTable.TABLE_NAME + " WHERE " +
-				MembersTable.SPACE + "='" + spaceId + "';";
-			Cursor membersCursor = db.rawQuery(membersQuery, null);
-			Set<SpaceMember> members = new HashSet<SpaceMember>();
-			while (membersCursor.moveToNext()){
-				int jidColumn = membersCursor.getColumnIndex(MembersTable.BAREJID);
-				int roleColumn = membersCursor.getColumnIndex(MembersTable.ROLE);
-				members.add(new de.imc.mirror.sdk.android.SpaceMember(membersCursor.getString(jidColumn),
-						Role.valueOf(membersCursor.getString(roleColumn))));
-			}
-			membersCursor.close();
-			String channelsTypeQuery = "SELECT DISTINCT " + ChannelsTable.TYPE + " FROM " + ChannelsTable.TABLE_NAME + " WHERE " +
-							ChannelsTable.SPACE + "='" + spaceId + "';";
-			Cursor channelsTypeCursor = db.rawQuery(channelsTypeQuery, null);
-			Set<SpaceChannel> channels = new HashSet<SpaceChannel>();
-			while (channelsTypeCursor.moveToNext()){
-				String type = channelsTypeCursor.getString(channelsTypeCursor.getColumnIndex(ChannelsTable.TYPE));
-				String channelsQuery = "SELECT * FROM " + ChannelsTable.TABLE_NAME + " WHERE " +
-					ChannelsTable.SPACE + "='" + spaceId + "' AND " + ChannelsTable.TYPE + "='" + type + "';";
-				Cursor channelsCursor = db.rawQuery(channelsQuery, null);
-				Map<String, String> properties = new HashMap<String,String>();
-				while (channelsCursor.moveToNext()){
-					int keyColumn = channelsCursor.getColumnIndex(ChannelsTable.KEY);
-					int valueColumn = channelsCursor.getColumnIndex(ChannelsTable.VALUE);
-					properties.put(channelsCursor.getString(keyColumn), 
-							channelsCursor.getString(valueColumn));
+	protected List<Space> getCachedSpacesForUser(String user){
+		handleLock.readLock().lock();
+		try {
+			List<Space> spaces = new ArrayList<Space>();
+			SQLiteDatabase db = getDatabase();
+			String query = "Select * FROM " + SpacesTable.TABLE_NAME + " WHERE " +
+									SpacesTable.USER + "='" + user + "';";
+			Cursor c = db.rawQuery(query, null);
+			while(c.moveToNext()){
+				String spaceId = c.getString(c.getColumnIndex(SpacesTable.SPACE_ID));
+				String membersQuery = "SELECT * FROM " + MembersTable.TABLE_NAME + " WHERE " +
+					MembersTable.SPACE + "='" + spaceId + "';";
+				Cursor membersCursor = db.rawQuery(membersQuery, null);
+				Set<SpaceMember> members = new HashSet<SpaceMember>();
+				while (membersCursor.moveToNext()){
+					int jidColumn = membersCursor.getColumnIndex(MembersTable.BAREJID);
+					int roleColumn = membersCursor.getColumnIndex(MembersTable.ROLE);
+					members.add(new de.imc.mirror.sdk.android.SpaceMember(membersCursor.getString(jidColumn),
+							Role.valueOf(membersCursor.getString(roleColumn))));
 				}
-				channelsCursor.close();
-				channels.add(new de.imc.mirror.sdk.android.SpaceChannel(type, properties));
-			}
-			channelsTypeCursor.close();
-			String name = c.getString(c.getColumnIndex(SpacesTable.SPACE_NAME));
-			String domain = c.getString(c.getColumnIndex(SpacesTable.SPACE_DOMAIN));
-			Space.Type type = Space.Type.getType(c.getString(c.getColumnIndex(SpacesTable.SPACE_TYPE)));
-			Space.PersistenceType persistenceType = Space.PersistenceType.valueOf(c.getString(c.getColumnIndex(SpacesTable.SPACE_PERSISTENTTYPE)));
-			Duration duration;
-			try {
-				duration = DatatypeFactory.newInstance().newDuration(c.getString(c.getColumnIndex(SpacesTable.SPACE_PERSISTENTDURATION)));
-			} catch (Exception e) {
-				persistenceType = Space.PersistenceType.OFF;
-				duration = null;
+				membersCursor.close();
+				String channelsTypeQuery = "SELECT DISTINCT " + ChannelsTable.TYPE + " FROM " + ChannelsTable.TABLE_NAME + " WHERE " +
+								ChannelsTable.SPACE + "='" + spaceId + "';";
+				Cursor channelsTypeCursor = db.rawQuery(channelsTypeQuery, null);
+				Set<SpaceChannel> channels = new HashSet<SpaceChannel>();
+				while (channelsTypeCursor.moveToNext()){
+					String type = channelsTypeCursor.getString(channelsTypeCursor.getColumnIndex(ChannelsTable.TYPE));
+					String channelsQuery = "SELECT * FROM " + ChannelsTable.TABLE_NAME + " WHERE " +
+						ChannelsTable.SPACE + "='" + spaceId + "' AND " + ChannelsTable.TYPE + "='" + type + "';";
+					Cursor channelsCursor = db.rawQuery(channelsQuery, null);
+					Map<String, String> properties = new HashMap<String,String>();
+					while (channelsCursor.moveToNext()){
+						int keyColumn = channelsCursor.getColumnIndex(ChannelsTable.KEY);
+						int valueColumn = channelsCursor.getColumnIndex(ChannelsTable.VALUE);
+						properties.put(channelsCursor.getString(keyColumn), 
+								channelsCursor.getString(valueColumn));
+					}
+					channelsCursor.close();
+					channels.add(new de.imc.mirror.sdk.android.SpaceChannel(type, properties));
+				}
+				channelsTypeCursor.close();
+				String name = c.getString(c.getColumnIndex(SpacesTable.SPACE_NAME));
+				String domain = c.getString(c.getColumnIndex(SpacesTable.SPACE_DOMAIN));
+				Space.Type type = Space.Type.getType(c.getString(c.getColumnIndex(SpacesTable.SPACE_TYPE)));
+				Space.PersistenceType persistenceType = Space.PersistenceType.valueOf(c.getString(c.getColumnIndex(SpacesTable.SPACE_PERSISTENTTYPE)));
+				Duration duration;
+				try {
+					duration = DatatypeFactory.newInstance().newDuration(c.getString(c.getColumnIndex(SpacesTable.SPACE_PERSISTENTDURATION)));
+				} catch (Exception e) {
+					persistenceType = Space.PersistenceType.OFF;
+					duration = null;
+				}
+				spaces.add(de.imc.mirror.sdk.android.Space.createSpace(name, spaceId, domain, null, type, channels, members, persistenceType, duration));
 			}
-			spaces.add(de.imc.mirror.sdk.android.Space.createSpace(name, spaceId, domain, null, type, channels, members, persistenceType, duration));
+			c.close();
+			return spaces;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return spaces;
 	}
 	
 	/**
 	 * Saves a payload which can't be send.
+	 * If the payload updates a data object which is still queued for the same space, the queued payload is deleted and its
+	 * coalescing key is taken over. Afterwards, if a coalescing key is given, queued payloads of the user for the same space
+	 * with the same key are deleted.
 	 * @param user The user to send the payload.
 	 * @param id The id of the payload which should be send.
 	 * @param spaceId The id of the node to send the payload to.
 	 * @param payload The payload to send.
+	 * @param coalesceKey Key identifying the logical object the payload represents. May be <code>null</code>.
+	 * @param objectId Identifier of the data object contained in the payload. May be <code>null</code>.
+	 * @param updatedObjectId Identifier of the data object updated by the payload. <code>null</code> to disable coalescing by object id.
 	 */
-	protected synchronized void savePayloadToSend(String user, String id, String spaceId, SimplePayload payload){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		String query = "INSERT INTO " + SendTable.TABLE_NAME + "(" + SendTable.SEND_ID+ ", " + 
-						SendTable.SEND_NAME + ", " + SendTable.SEND_NAMESPACE + ", " + SendTable.SEND_SPACE + 
-						", " + SendTable.SEND_PAYLOAD + ", " + SpacesTable.USER + ") VALUES(?,?,?,?,?,?);";
-		SQLiteStatement stmt = db.compileStatement(query);
-		stmt.bindString(1, id);
-		stmt.bindString(2, payload.getElementName());
-		stmt.bindString(3, payload.getNamespace());
-		stmt.bindString(4, spaceId);
-		stmt.bindString(5, payload.toXML());
-		stmt.bindString(6, user);
-		try{
-			stmt.executeInsert();
-		}catch (Exception e){
-			Log.d("DataWrapper", "An Exception was thrown while saving a payload to send", e);
-		}finally{
-			stmt.close();
-			db.close();
-		}	
+	protected void savePayloadToSend(String user, String id, String spaceId, SimplePayload payload, String coalesceKey, String objectId, String updatedObjectId){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "INSERT INTO " + SendTable.TABLE_NAME + "(" + SendTable.SEND_ID+ ", " + 
+							SendTable.SEND_NAME + ", " + SendTable.SEND_NAMESPACE + ", " + SendTable.SEND_SPACE + 
+							", " + SendTable.SEND_PAYLOAD + ", " + SpacesTable.USER + ", " + SendTable.SEND_COALESCE_KEY + 
+							", " + SendTable.SEND_OBJECT_ID + ") VALUES(?,?,?,?,?,?,?,?);";
+			SQLiteStatement stmt = db.compileStatement(query);
+			try{
+				db.beginTransaction();
+				if (updatedObjectId != null) {
+					// the payload supersedes the queued version of the object it updates
+					Cursor c = db.query(SendTable.TABLE_NAME, new String[] {SendTable.SEND_ID, SendTable.SEND_COALESCE_KEY},
+							SendTable.USER + "=? AND " + SendTable.SEND_SPACE + "=? AND " + SendTable.SEND_OBJECT_ID + "=? AND " + SendTable.SEND_STATE + "=?",
+							new String[] {user, spaceId, updatedObjectId, SendTable.STATE_QUEUED}, null, null, null);
+					try {
+						while (c.moveToNext()) {
+							if (!c.isNull(1)) {
+								coalesceKey = c.getString(1);
+							}
+							db.delete(SendTable.TABLE_NAME, SendTable.SEND_ID + "=?", new String[] {c.getString(0)});
+							Log.d("DataWrapper", "Queued payload " + c.getString(0) + " superseded by payload " + id + ".");
+						}
+					} finally {
+						c.close();
+					}
+				}
+				stmt.bindString(1, id);
+				stmt.bindString(2, payload.getElementName());
+				stmt.bindString(3, payload.getNamespace());
+				stmt.bindString(4, spaceId);
+				stmt.bindString(5, payload.toXML());
+				stmt.bindString(6, user);
+				if (coalesceKey != null) {
+					stmt.bindString(7, coalesceKey);
+				} else {
+					stmt.bindNull(7);
+				}
+				if (objectId != null) {
+					stmt.bindString(8, objectId);
+				} else {
+					stmt.bindNull(8);
+				}
+				if (coalesceKey != null) {
+					int superseded = db.delete(SendTable.TABLE_NAME, SendTable.USER + "=? AND " + SendTable.SEND_SPACE + "=? AND " +
+							SendTable.SEND_COALESCE_KEY + "=? AND " + SendTable.SEND_STATE + "=?",
+							new String[] {user, spaceId, coalesceKey, SendTable.STATE_QUEUED});
+					if (superseded > 0) {
+						Log.d("DataWrapper", superseded + " queued payload(s) superseded by payload " + id + ".");
+					}
+				}
+				stmt.executeInsert();
+				db.setTransactionSuccessful();
+			}catch (Exception e){
+				Log.d("DataWrapper", "An Exception was thrown while saving a payload to send", e);
+			}finally{
+				db.endTransaction();
+				stmt.close();
+			}	
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 	
 	/**
-	 * Gets all payloads to send for the given user.
+	 * Gets the queued payloads of the given user which are due to be sent.
 	 * @param user The user to get the payloads for.
-	 * @return A map consisting of the payloadIds and the corresponding simplepayloads.
-	 */
-	protected synchronized Map<String, SimplePayload> getPayloadsToSend(String user){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select * FROM " + SendTable.TABLE_NAME + " WHERE " + SendTable.USER + "='" + user + "';";
-		Cursor c = db.rawQuery(query, null);
-		Map<String, SimplePayload> payloads = new HashMap<String, SimplePayload>();
-		while(c.moveToNext()){
-			SimplePayload payload = new SimplePayload(c.getString(c.getColumnIndex(SendTable.SEND_NAME)),
-											c.getString(c.getColumnIndex(SendTable.SEND_NAMESPACE)),
-											c.getString(c.getColumnIndex(SendTable.SEND_PAYLOAD)));
-			payloads.put(c.getString(c.getColumnIndex(SendTable.SEND_ID)), payload);
+	 * @param now Current time in milliseconds.
+	 * @param limit Maximum number of payloads to return.
+	 * @return A list of outbox entries in the order they were saved. May be empty.
+	 */
+	protected List<Outbox.Entry> getDuePayloadsToSend(String user, long now, int limit){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "Select * FROM " + SendTable.TABLE_NAME + " WHERE " + SendTable.USER + "=? AND " +
+							SendTable.SEND_STATE + "='" + SendTable.STATE_QUEUED + "' AND " + SendTable.SEND_NEXT_ATTEMPT + "<=" + now +
+							" ORDER BY rowid LIMIT " + limit + ";";
+			Cursor c = db.rawQuery(query, new String[] {user});
+			List<Outbox.Entry> entries = new ArrayList<Outbox.Entry>();
+			while(c.moveToNext()){
+				SimplePayload payload = new SimplePayload(c.getString(c.getColumnIndex(SendTable.SEND_NAME)),
+												c.getString(c.getColumnIndex(SendTable.SEND_NAMESPACE)),
+												c.getString(c.getColumnIndex(SendTable.SEND_PAYLOAD)));
+				entries.add(new Outbox.Entry(c.getString(c.getColumnIndex(SendTable.SEND_ID)),
+												c.getString(c.getColumnIndex(SendTable.SEND_SPACE)),
+												payload,
+												c.getInt(c.getColumnIndex(SendTable.SEND_ATTEMPTS))));
+			}
+			c.close();
+			return entries;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return payloads;
 	}
 	
 	/**
-	 * Gets the space to send a payload to.
-	 * @param id The id of the payload to get the node for.
-	 * @return The id of the space.
-	 */
-	protected synchronized String getSpaceForPayload(String id){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select " + SendTable.SEND_SPACE + " FROM " + SendTable.TABLE_NAME + " WHERE " +
-								SendTable.SEND_ID + "='" + id + "';";
-		Cursor c = db.rawQuery(query, null);
-		if (c.moveToFirst()){
-			String result = c.getString(c.getColumnIndex(SendTable.SEND_SPACE));
+	 * Gets the time of the next attempt to send a queued payload of the given user.
+	 * @param user The user to get the time for.
+	 * @return Time in milliseconds or <code>null</code> if no payload is queued.
+	 */
+	protected Long getNextPayloadAttempt(String user){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "Select MIN(" + SendTable.SEND_NEXT_ATTEMPT + ") FROM " + SendTable.TABLE_NAME + " WHERE " +
+							SendTable.USER + "=? AND " + SendTable.SEND_STATE + "='" + SendTable.STATE_QUEUED + "';";
+			Cursor c = db.rawQuery(query, new String[] {user});
+			Long result = null;
+			if (c.moveToFirst() && !c.isNull(0)){
+				result = c.getLong(0);
+			}
 			c.close();
-			db.close();
 			return result;
+		} finally {
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Marks a payload as being sent.
+	 * @param id The id of the payload.
+	 */
+	protected void setPayloadInFlight(String id){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			ContentValues values = new ContentValues();
+			values.put(SendTable.SEND_STATE, SendTable.STATE_IN_FLIGHT);
+			db.update(SendTable.TABLE_NAME, values, SendTable.SEND_ID + "=?", new String[] {id});
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Queues a payload again after a failed attempt to send it.
+	 * @param id The id of the payload.
+	 * @param attempts The number of failed attempts.
+	 * @param nextAttempt Time of the next attempt in milliseconds.
+	 */
+	protected void reschedulePayloadToSend(String id, int attempts, long nextAttempt){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			ContentValues values = new ContentValues();
+			values.put(SendTable.SEND_STATE, SendTable.STATE_QUEUED);
+			values.put(SendTable.SEND_ATTEMPTS, attempts);
+			values.put(SendTable.SEND_NEXT_ATTEMPT, nextAttempt);
+			db.update(SendTable.TABLE_NAME, values, SendTable.SEND_ID + "=?", new String[] {id});
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Queues all payloads of the given user again which were marked as being sent.
+	 * The payloads are only reset with the first call for a user in this process. Later calls return immediately, because
+	 * payloads in flight then belong to an outbox which is still active.
+	 * @param user The user to reset the payloads for.
+	 */
+	protected void resetInFlightPayloads(String user){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			if (!usersWithResetPayloads.add(user)) {
+				return;
+			}
+			SQLiteDatabase db = getDatabase();
+			ContentValues values = new ContentValues();
+			values.put(SendTable.SEND_STATE, SendTable.STATE_QUEUED);
+			db.update(SendTable.TABLE_NAME, values, SendTable.USER + "=? AND " + SendTable.SEND_STATE + "=?",
+					new String[] {user, SendTable.STATE_IN_FLIGHT});
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Deletes a payload from the sendcache.
+	 * @param id The id of the payload.
+	 */
+	protected void deletePayloadToSend(String id){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.delete(SendTable.TABLE_NAME, SendTable.SEND_ID + "=?", new String[] {id});
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return null;
 	}
 	
 	/**
 	 * Deletes all entries of the sendcache for an user.
 	 * @param user The user to delete entries for.
 	 */
-	protected synchronized void clearSendCache(String user){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.execSQL("DELETE FROM " + SendTable.TABLE_NAME + " WHERE " + SendTable.USER + " ='" + user +"';");
-		db.close();
+	protected void clearSendCache(String user){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.execSQL("DELETE FROM " + SendTable.TABLE_NAME + " WHERE " + SendTable.USER + " ='" + user +"';");
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 	
 	/**
@@ -370,19 +610,42 @@ public class DataWrapper {
 	 * @param id The id of the item to check.
 	 * @return If the item was already cached.
 	 */
-	protected synchronized boolean isDataObjectAlreadyCached(String id){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select * FROM " + DataTable.TABLE_NAME + " WHERE " +
-						DataTable.DATA_ID + "='" + id + "';";
-		Cursor c = db.rawQuery(query, null);
-		if (c.getCount()>0){
+	protected boolean isDataObjectAlreadyCached(String id){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "Select * FROM " + DataTable.TABLE_NAME + " WHERE " +
+							DataTable.DATA_ID + "='" + id + "';";
+			Cursor c = db.rawQuery(query, null);
+			if (c.getCount()>0){
+				c.close();
+				return true;
+			}
 			c.close();
-			db.close();
-			return true;
+			return false;
+		} finally {
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the item ids of all cached data objects.
+	 * @return List of pubsub item ids, ordered from the oldest to the latest stored item. May be empty.
+	 */
+	protected List<String> getCachedDataObjectIds(){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			Cursor c = db.query(DataTable.TABLE_NAME, new String[] {DataTable.DATA_ID}, null, null, null, null, "rowid");
+			List<String> ids = new ArrayList<String>(c.getCount());
+			while (c.moveToNext()) {
+				ids.add(c.getString(0));
+			}
+			c.close();
+			return ids;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return false;
 	}
 	
 	/**
@@ -391,24 +654,69 @@ public class DataWrapper {
 	 * @param obj The dataobject to save.
 	 * @param id The itemid of the item the dataobject was received from.
 	 */
-	protected synchronized void saveDataObject(String nodeId, DataObject obj, String id){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		String query = "INSERT INTO " + DataTable.TABLE_NAME + "(" + DataTable.DATA_ID+ ", " + 
-						DataTable.DATA_NAME + ", " + DataTable.DATA_NAMESPACE + ", " + DataTable.DATA_NODE + 
-						", " + DataTable.DATA_PAYLOAD + ") VALUES(?,?,?,?,?);";
-		SQLiteStatement stmt = db.compileStatement(query);
-		stmt.bindString(1, id);
-		stmt.bindString(2, obj.getElement().getName());
-		stmt.bindString(3, obj.getNamespaceURI());
-		stmt.bindString(4, nodeId);
-		stmt.bindString(5, obj.toString());
-		try{
-			stmt.executeInsert();
-		}catch (Exception e){
-			Log.d("DataWrapper", "An Exception was thrown while saving an item", e);
-		}finally{
-			stmt.close();
-			db.close();
+	protected void saveDataObject(String nodeId, DataObject obj, String id){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "INSERT OR IGNORE INTO " + DataTable.TABLE_NAME + "(" + DataTable.DATA_ID+ ", " + 
+							DataTable.DATA_NAME + ", " + DataTable.DATA_NAMESPACE + ", " + DataTable.DATA_NODE + 
+							", " + DataTable.DATA_PAYLOAD + ", " + DataObjectMetadata.COLUMNS + ") VALUES(?,?,?,?,?," + DataObjectMetadata.PLACEHOLDERS + ");";
+			SQLiteStatement stmt = db.compileStatement(query);
+			stmt.bindString(1, id);
+			stmt.bindString(2, obj.getElement().getName());
+			stmt.bindString(3, obj.getNamespaceURI());
+			stmt.bindString(4, nodeId);
+			stmt.bindString(5, obj.toString());
+			DataObjectMetadata.fromElement(obj.getElement()).bind(stmt, 6);
+			try{
+				stmt.executeInsert();
+			}catch (Exception e){
+				Log.d("DataWrapper", "An Exception was thrown while saving an item", e);
+			}finally{
+				stmt.close();
+			}
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Stores multiple data objects in a single transaction.
+	 * Data objects with an item id already stored in the cache are skipped.
+	 * @param entries List of data objects to store.
+	 */
+	protected void saveDataObjects(List<DataObjectCacheWriter.Entry> entries){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "INSERT OR IGNORE INTO " + DataTable.TABLE_NAME + "(" + DataTable.DATA_ID+ ", " + 
+							DataTable.DATA_NAME + ", " + DataTable.DATA_NAMESPACE + ", " + DataTable.DATA_NODE + 
+							", " + DataTable.DATA_PAYLOAD + ", " + DataObjectMetadata.COLUMNS + ") VALUES(?,?,?,?,?," + DataObjectMetadata.PLACEHOLDERS + ");";
+			SQLiteStatement stmt = db.compileStatement(query);
+			try{
+				db.beginTransaction();
+				for (DataObjectCacheWriter.Entry entry : entries) {
+					stmt.bindString(1, entry.id);
+					stmt.bindString(2, entry.dataObject.getElement().getName());
+					stmt.bindString(3, entry.dataObject.getNamespaceURI());
+					stmt.bindString(4, entry.nodeId);
+					stmt.bindString(5, entry.dataObject.toString());
+					DataObjectMetadata.fromElement(entry.dataObject.getElement()).bind(stmt, 6);
+					stmt.executeInsert();
+				}
+				db.setTransactionSuccessful();
+			}catch (Exception e){
+				Log.d("DataWrapper", "An Exception was thrown while saving " + entries.size() + " items", e);
+			}finally{
+				db.endTransaction();
+				stmt.close();
+			}
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
 		}
 	}
 	
@@ -417,35 +725,77 @@ public class DataWrapper {
 	 * @param nodeId The id of the node to get the items for.
 	 * @return A list of all cached items.
 	 */
-	protected synchronized List<DataObject>  getCachedDataObjects(String nodeId){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select * FROM " + DataTable.TABLE_NAME + " WHERE " +
-								DataTable.DATA_NODE + "='" + nodeId + "';";
-		Cursor c = db.rawQuery(query, null);
-		List<DataObject> objs = new ArrayList<DataObject>();
-		while(c.moveToNext()){
-			String namespace = c.getString(c.getColumnIndex(DataTable.DATA_NAMESPACE));
-			String payload = c.getString(c.getColumnIndex(DataTable.DATA_PAYLOAD));
+	protected List<DataObject>  getCachedDataObjects(String nodeId){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "Select * FROM " + DataTable.TABLE_NAME + " WHERE " +
+									DataTable.DATA_NODE + "='" + nodeId + "';";
+			Cursor c = db.rawQuery(query, null);
+			List<DataObject> objs = new ArrayList<DataObject>();
+			while(c.moveToNext()){
+				String namespace = c.getString(c.getColumnIndex(DataTable.DATA_NAMESPACE));
+				String payload = c.getString(c.getColumnIndex(DataTable.DATA_PAYLOAD));
 			
-			SAXBuilder reader = new SAXBuilder();
-			StringReader in = new StringReader(payload);
-			Document document = null;
-			try {
-			document = reader.build(in);
-			} catch (JDOMException e) {
-				Log.d("DataWrapper", "An JDOMException was thrown while parsing a newly gotten item.", e);
-			} catch (IOException e) {
-				Log.d("DataWrapper", "An IOException was thrown while parsing a newly gotten item.", e);
+				SAXBuilder reader = new SAXBuilder();
+				StringReader in = new StringReader(payload);
+				Document document = null;
+				try {
+				document = reader.build(in);
+				} catch (JDOMException e) {
+					Log.d("DataWrapper", "An JDOMException was thrown while parsing a newly gotten item.", e);
+				} catch (IOException e) {
+					Log.d("DataWrapper", "An IOException was thrown while parsing a newly gotten item.", e);
+				}
+				if (document == null){
+				}
+				Element elem = document.getRootElement();
+				DataObject obj = new DataObjectBuilder(elem, namespace).build();
+				objs.add(obj);
 			}
-			if (document == null){
+			c.close();
+			return objs;
+		} finally {
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Returns the cached data objects matching a selection on the data table.
+	 * Only the payloads of the selected rows are parsed.
+	 * @param selection SQL selection, i.e., the WHERE clause without the keyword. May contain placeholders.
+	 * @param selectionArgs Arguments for the placeholders of the selection.
+	 * @return List of data objects in the order they were stored. May be empty.
+	 */
+	protected List<DataObject> queryCachedDataObjects(String selection, String[] selectionArgs){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			Cursor c = db.query(DataTable.TABLE_NAME, new String[] {DataTable.DATA_NAMESPACE, DataTable.DATA_PAYLOAD},
+					selection, selectionArgs, null, null, "rowid");
+			List<DataObject> objs = new ArrayList<DataObject>(c.getCount());
+			try {
+				SAXBuilder reader = new SAXBuilder();
+				while (c.moveToNext()) {
+					Document document;
+					try {
+						document = reader.build(new StringReader(c.getString(1)));
+					} catch (JDOMException e) {
+						Log.d("DataWrapper", "Failed to parse cached data object.", e);
+						continue;
+					} catch (IOException e) {
+						Log.d("DataWrapper", "Failed to parse cached data object.", e);
+						continue;
+					}
+					objs.add(new DataObjectBuilder(document.getRootElement(), c.getString(0)).build());
+				}
+			} finally {
+				c.close();
 			}
-			Element elem = document.getRootElement();
-			DataObject obj = new DataObjectBuilder(elem, namespace).build();
-			objs.add(obj);
+			return objs;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return objs;
 	}
 	
 	/**
@@ -453,24 +803,80 @@ public class DataWrapper {
 	 * @param spaces The spaces to save.
 	 * @param user The user to save the spaces for.
 	 */
-	protected synchronized void saveSpaces(List<Space> spaces, String user){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.beginTransaction();
-		try{
-			for (Space space:spaces){
-				ContentValues values = new ContentValues();
-				values.put(SpacesTable.SPACE_ID, space.getId());
-				values.put(SpacesTable.SPACE_NAME, space.getName());
-				values.put(SpacesTable.SPACE_DOMAIN, space.getDomain());
-				values.put(SpacesTable.SPACE_TYPE, space.getType().toString());
-				values.put(SpacesTable.SPACE_PERSISTENTTYPE, space.getPersistenceType().name());if (space.getPersistenceDuration() != null) {
-					values.put(SpacesTable.SPACE_PERSISTENTDURATION, space.getPersistenceDuration().toString());
-				} else {
-					values.putNull(SpacesTable.SPACE_PERSISTENTDURATION);
+	protected void saveSpaces(List<Space> spaces, String user){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.beginTransaction();
+			try{
+				for (Space space:spaces){
+					ContentValues values = new ContentValues();
+					values.put(SpacesTable.SPACE_ID, space.getId());
+					values.put(SpacesTable.SPACE_NAME, space.getName());
+					values.put(SpacesTable.SPACE_DOMAIN, space.getDomain());
+					values.put(SpacesTable.SPACE_TYPE, space.getType().toString());
+					values.put(SpacesTable.SPACE_PERSISTENTTYPE, space.getPersistenceType().name());if (space.getPersistenceDuration() != null) {
+						values.put(SpacesTable.SPACE_PERSISTENTDURATION, space.getPersistenceDuration().toString());
+					} else {
+						values.putNull(SpacesTable.SPACE_PERSISTENTDURATION);
+					}
+					values.put(SpacesTable.USER, user);
+					db.insertWithOnConflict(SpacesTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+					Set<SpaceChannel> channels = space.getChannels();
+					for (SpaceChannel channel:channels){
+						for (String property:channel.getProperties().keySet()){
+							values = new ContentValues();
+							values.put(ChannelsTable.TYPE, channel.getType());
+							values.put(ChannelsTable.SPACE, space.getId());
+							values.put(ChannelsTable.KEY, property);
+							values.put(ChannelsTable.VALUE, channel.getProperties().get(property));
+							db.insertWithOnConflict(ChannelsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+						}
+					}
+					for (SpaceMember member:space.getMembers()){
+						values = new ContentValues();
+						values.put(MembersTable.ROLE, member.getRole().name());
+						values.put(MembersTable.SPACE, space.getId());
+						values.put(MembersTable.BAREJID, member.getJID());
+						db.insertWithOnConflict(MembersTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+					}
 				}
-				values.put(SpacesTable.USER, user);
-				db.insert(SpacesTable.TABLE_NAME, null, values);
+				db.setTransactionSuccessful();
+			}catch (Exception e){
+				Log.d("DataWrapper", "An Exception was thrown while saving spaces", e);
+			}finally{
+				db.endTransaction();
+			}
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Updates the cached information for a space.
+	 * @param space The space to update the information for.
+	 */
+	protected void updateCachedSpaceInformation(Space space){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			String spaceId = space.getId();
+			SQLiteDatabase db = getDatabase();
+			try {
+				db.beginTransaction();
+				db.execSQL("UPDATE " + SpacesTable.TABLE_NAME + " SET " + 
+						SpacesTable.SPACE_DOMAIN + "='" + space.getDomain()+ "', " +
+						SpacesTable.SPACE_NAME + "='" + space.getName()+ "', " +
+						SpacesTable.SPACE_PERSISTENTTYPE + "='" + space.getPersistenceType().name() + "', " +
+						SpacesTable.SPACE_PERSISTENTDURATION + "='" + (space.getPersistenceDuration() == null? "null":space.getPersistenceDuration().toString()) + "', " +
+						SpacesTable.SPACE_TYPE + "='" + space.getType().name()+ "' " +
+						" WHERE " + SpacesTable.SPACE_ID + " ='" + spaceId + "';");
+				db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME + " WHERE " + ChannelsTable.SPACE + " ='" + spaceId + "';");
+				db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME + " WHERE " + MembersTable.SPACE + " ='" + spaceId + "';");
 				Set<SpaceChannel> channels = space.getChannels();
+				ContentValues values;
 				for (SpaceChannel channel:channels){
 					for (String property:channel.getProperties().keySet()){
 						values = new ContentValues();
@@ -478,7 +884,7 @@ public class DataWrapper {
 						values.put(ChannelsTable.SPACE, space.getId());
 						values.put(ChannelsTable.KEY, property);
 						values.put(ChannelsTable.VALUE, channel.getProperties().get(property));
-						db.insert(ChannelsTable.TABLE_NAME, null, values);
+						db.insertWithOnConflict(ChannelsTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
 					}
 				}
 				for (SpaceMember member:space.getMembers()){
@@ -486,59 +892,15 @@ public class DataWrapper {
 					values.put(MembersTable.ROLE, member.getRole().name());
 					values.put(MembersTable.SPACE, space.getId());
 					values.put(MembersTable.BAREJID, member.getJID());
-					db.insert(MembersTable.TABLE_NAME, null, values);
+					db.insertWithOnConflict(MembersTable.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
 				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
 			}
-			db.setTransactionSuccessful();
-		}catch (Exception e){
-			Log.d("DataWrapper", "An Exception was thrown while saving spaces", e);
-		}finally{
-			db.endTransaction();
-			db.close();
-		}
-	}
-	
-	/**
-	 * Updates the cached information for a space.
-	 * @param space The space to update the information for.
-	 */
-	protected synchronized void updateCachedSpaceInformation(Space space){
-		String spaceId = space.getId();
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		try {
-			db.beginTransaction();
-			db.execSQL("UPDATE " + SpacesTable.TABLE_NAME + " SET " + 
-					SpacesTable.SPACE_DOMAIN + "='" + space.getDomain()+ "', " +
-					SpacesTable.SPACE_NAME + "='" + space.getName()+ "', " +
-					SpacesTable.SPACE_PERSISTENTTYPE + "='" + space.getPersistenceType().name() + "', " +
-					SpacesTable.SPACE_PERSISTENTDURATION + "='" + (space.getPersistenceDuration() == null? "null":space.getPersistenceDuration().toString()) + "', " +
-					SpacesTable.SPACE_TYPE + "='" + space.getType().name()+ "' " +
-					" WHERE " + SpacesTable.SPACE_ID + " ='" + spaceId + "';");
-			db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME + " WHERE " + ChannelsTable.SPACE + " ='" + spaceId + "';");
-			db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME + " WHERE " + MembersTable.SPACE + " ='" + spaceId + "';");
-			Set<SpaceChannel> channels = space.getChannels();
-			ContentValues values;
-			for (SpaceChannel channel:channels){
-				for (String property:channel.getProperties().keySet()){
-					values = new ContentValues();
-					values.put(ChannelsTable.TYPE, channel.getType());
-					values.put(ChannelsTable.SPACE, space.getId());
-					values.put(ChannelsTable.KEY, property);
-					values.put(ChannelsTable.VALUE, channel.getProperties().get(property));
-					db.insert(ChannelsTable.TABLE_NAME, null, values);
-				}
-			}
-			for (SpaceMember member:space.getMembers()){
-				values = new ContentValues();
-				values.put(MembersTable.ROLE, member.getRole().name());
-				values.put(MembersTable.SPACE, space.getId());
-				values.put(MembersTable.BAREJID, member.getJID());
-				db.insert(MembersTable.TABLE_NAME, null, values);
-			}
-			db.setTransactionSuccessful();
 		} finally {
-			db.endTransaction();
-			db.close();
+			writeLock.unlock();
+			handleLock.readLock().unlock();
 		}
 	}
 	
@@ -547,105 +909,131 @@ public class DataWrapper {
 	 * @param spaceId The spaceid to look for.
 	 * @return If a entry was found or not.
 	 */
-	protected synchronized boolean isSpaceAlreadyCached(String spaceId){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select * FROM " + SpacesTable.TABLE_NAME + " WHERE " +
-						SpacesTable.SPACE_ID + "='" + spaceId + "';";
-		Cursor c = db.rawQuery(query, null);
-		if (c.getCount()>0){
+	protected boolean isSpaceAlreadyCached(String spaceId){
+		handleLock.readLock().lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			String query = "Select * FROM " + SpacesTable.TABLE_NAME + " WHERE " +
+							SpacesTable.SPACE_ID + "='" + spaceId + "';";
+			Cursor c = db.rawQuery(query, null);
+			if (c.getCount()>0){
+				c.close();
+				return true;
+			}
 			c.close();
-			db.close();
-			return true;
+			return false;
+		} finally {
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
-		return false;
 	}
 	
 	/**
 	 * Deletes all sent, received and to-be-send data currently saved.
 	 */
-	protected synchronized void clearDataCache(){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.execSQL("DELETE FROM " + SendTable.TABLE_NAME);
-		db.execSQL("DELETE FROM " + DataTable.TABLE_NAME);
-		db.close();
+	protected void clearDataCache(){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.execSQL("DELETE FROM " + SendTable.TABLE_NAME);
+			db.execSQL("DELETE FROM " + DataTable.TABLE_NAME);
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 	
 	/**
 	 * Deletes all saved spaces-information.
 	 */
-	protected synchronized void clearSpacesCache(){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.execSQL("DELETE FROM " + SpacesTable.TABLE_NAME);
-		db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME);
-		db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME);
-		db.close();
+	protected void clearSpacesCache(){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.execSQL("DELETE FROM " + SpacesTable.TABLE_NAME);
+			db.execSQL("DELETE FROM " + ChannelsTable.TABLE_NAME);
+			db.execSQL("DELETE FROM " + MembersTable.TABLE_NAME);
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 
 	/**
 	 * Deletes all saved DataObjects.
 	 */
-	protected synchronized void clearSavedDataObjects(){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.execSQL("DELETE FROM " + DataTable.TABLE_NAME);
-		db.close();
+	protected void clearSavedDataObjects(){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.execSQL("DELETE FROM " + DataTable.TABLE_NAME);
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 
 	/**
 	 * Deletes all DataObjects which doesn't implement the given datamodels.
+	 * The data models are read from the metadata columns, the payloads are not parsed.
 	 * @param dataModels The datamodels to check against.
 	 */
-	protected synchronized void updateCachedDataObjects(Set<DataModel> dataModels){
-		SQLiteDatabase db = scheme.getReadableDatabase();
-		String query = "Select * FROM " + DataTable.TABLE_NAME + ";";
-		Cursor c = db.rawQuery(query, null);
-		List<DataObject> objs = new ArrayList<DataObject>();
-		while(c.moveToNext()){
-			String namespace = c.getString(c.getColumnIndex(DataTable.DATA_NAMESPACE));
-			String payload = c.getString(c.getColumnIndex(DataTable.DATA_PAYLOAD));
-			
-			SAXBuilder reader = new SAXBuilder();
-			StringReader in = new StringReader(payload);
-			Document document = null;
+	protected void updateCachedDataObjects(Set<DataModel> dataModels){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			Cursor c = db.query(DataTable.TABLE_NAME, new String[] {DataTable.DATA_ID, DataTable.DATA_SCHEMA_LOCATION}, null, null, null, null, null);
+			List<String> idsToDelete = new ArrayList<String>();
 			try {
-			document = reader.build(in);
-			} catch (JDOMException e) {
-				Log.d("DataWrapper", "An JDOMException was thrown while parsing a newly gotten item.", e);
-			} catch (IOException e) {
-				Log.d("DataWrapper", "An IOException was thrown while parsing a newly gotten item.", e);
-			}
-			if (document == null){
-				continue;
-			}
-			Element elem = document.getRootElement();
-			DataObject obj = new DataObjectBuilder(elem, namespace).build();
-			if (!dataModels.contains(obj.getDataModel())){
-				objs.add(obj);
+				while (c.moveToNext()) {
+					DataModel dataModel = null;
+					if (!c.isNull(1)) {
+						// same as DataObject.getDataModel()
+						String[] schemaLocation = c.getString(1).split(" ");
+						if (schemaLocation.length >= 2) {
+							dataModel = new de.imc.mirror.sdk.android.DataModel(schemaLocation[0], schemaLocation[1]);
+						}
+					}
+					if (dataModel == null || !dataModels.contains(dataModel)) {
+						idsToDelete.add(c.getString(0));
+					}
+				}
+			} finally {
+				c.close();
 			}
-		}
-		if (objs.size()>0){
-			StringBuilder builder = new StringBuilder("DELETE FROM " + DataTable.TABLE_NAME + " WHERE ");
-			for (int i=0; i<objs.size(); i++){
-				DataObject obj = objs.get(i);
-				builder.append(DataTable.DATA_ID + "=" + obj.getId());
-				if (i != objs.size()-1){
-					builder.append(" OR ");
+			if (!idsToDelete.isEmpty()) {
+				db.beginTransaction();
+				try {
+					for (String id : idsToDelete) {
+						db.delete(DataTable.TABLE_NAME, DataTable.DATA_ID + "=?", new String[] {id});
+					}
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
 				}
 			}
-			db.execSQL(builder.toString());
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
 		}
-		c.close();
-		db.close();
 	}
 
 	/**
 	 * Deletes all DataObjects for a specific Space.
 	 * @param nodeId The id of the pubsubnode of the Space.
 	 */
-	protected synchronized void deleteCachedDataObjectsForSpace(String nodeId){
-		SQLiteDatabase db = scheme.getWritableDatabase();
-		db.execSQL("DELETE FROM " + DataTable.TABLE_NAME + " WHERE " + DataTable.DATA_NODE + "='" + nodeId + "'");
-		db.close();
+	protected void deleteCachedDataObjectsForSpace(String nodeId){
+		handleLock.readLock().lock();
+		writeLock.lock();
+		try {
+			SQLiteDatabase db = getDatabase();
+			db.execSQL("DELETE FROM " + DataTable.TABLE_NAME + " WHERE " + DataTable.DATA_NODE + "='" + nodeId + "'");
+		} finally {
+			writeLock.unlock();
+			handleLock.readLock().unlock();
+		}
 	}
 }
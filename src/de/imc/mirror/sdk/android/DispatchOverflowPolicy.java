@@ -0,0 +1,20 @@
+package de.imc.mirror.sdk.android;
+
+/**
+ * Behavior of the data handler when a data object is received while the queue of a data object listener is full.
+ */
+public enum DispatchOverflowPolicy {
+	/**
+	 * The receiving thread is blocked until the listener has processed a queued data object.
+	 * No data objects are lost, but a slow listener delays the delivery to all other listeners.
+	 */
+	BLOCK,
+	/**
+	 * The received data object is discarded for this listener.
+	 */
+	DROP_NEWEST,
+	/**
+	 * The oldest queued data object is discarded for this listener to make room for the received one.
+	 */
+	DROP_OLDEST
+}
@@ -0,0 +1,158 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.DataObjectFilter;
+import de.imc.mirror.sdk.android.filter.FilterCompiler;
+
+/**
+ * Routes received data objects to the dispatchers of the data object listeners.
+ * Listeners may be restricted to a single space and to a filter. The listeners are indexed by space,
+ * so only listeners interested in a space are visited. Equal filters are compiled once and evaluated
+ * only once per data object, regardless of the number of listeners using them.
+ */
+class ListenerRouter {
+	
+	/**
+	 * Registration of a dispatcher.
+	 */
+	private static class Route {
+		final DataObjectDispatcher dispatcher;
+		final String spaceId;
+		final DataObjectFilter filter;
+		final DataObjectFilter compiledFilter;
+		
+		Route(DataObjectDispatcher dispatcher, String spaceId, DataObjectFilter filter, DataObjectFilter compiledFilter) {
+			this.dispatcher = dispatcher;
+			this.spaceId = spaceId;
+			this.filter = filter;
+			this.compiledFilter = compiledFilter;
+		}
+	}
+	
+	/**
+	 * Compiled filter shared by multiple routes.
+	 */
+	private static class SharedFilter {
+		final DataObjectFilter compiledFilter;
+		int references;
+		
+		SharedFilter(DataObjectFilter compiledFilter) {
+			this.compiledFilter = compiledFilter;
+			this.references = 0;
+		}
+	}
+	
+	private final List<Route> globalRoutes;
+	private final Map<String, List<Route>> routesBySpace; // <lower case space id, routes>
+	private final Map<DataObjectDispatcher, Route> routes;
+	private final Map<DataObjectFilter, SharedFilter> sharedFilters; // <filter, compiled filter>
+	
+	/**
+	 * Creates an empty router.
+	 */
+	ListenerRouter() {
+		this.globalRoutes = new CopyOnWriteArrayList<Route>();
+		this.routesBySpace = new ConcurrentHashMap<String, List<Route>>();
+		this.routes = new HashMap<DataObjectDispatcher, Route>();
+		this.sharedFilters = new HashMap<DataObjectFilter, SharedFilter>();
+	}
+	
+	/**
+	 * Adds a dispatcher.
+	 * @param dispatcher Dispatcher to add.
+	 * @param spaceId Identifier of the space to route data objects for. <code>null</code> to route data objects of all spaces.
+	 * @param filter Filter data objects have to pass. <code>null</code> to route all data objects.
+	 */
+	synchronized void add(DataObjectDispatcher dispatcher, String spaceId, DataObjectFilter filter) {
+		DataObjectFilter compiledFilter = null;
+		if (filter != null) {
+			SharedFilter sharedFilter = sharedFilters.get(filter);
+			if (sharedFilter == null) {
+				sharedFilter = new SharedFilter(FilterCompiler.compile(filter));
+				sharedFilters.put(filter, sharedFilter);
+			}
+			sharedFilter.references++;
+			compiledFilter = sharedFilter.compiledFilter;
+		}
+		Route route = new Route(dispatcher, spaceId != null ? spaceId.toLowerCase() : null, filter, compiledFilter);
+		routes.put(dispatcher, route);
+		if (route.spaceId == null) {
+			globalRoutes.add(route);
+		} else {
+			List<Route> spaceRoutes = routesBySpace.get(route.spaceId);
+			if (spaceRoutes == null) {
+				spaceRoutes = new CopyOnWriteArrayList<Route>();
+				routesBySpace.put(route.spaceId, spaceRoutes);
+			}
+			spaceRoutes.add(route);
+		}
+	}
+	
+	/**
+	 * Removes a dispatcher. If the dispatcher is not registered, nothing happens.
+	 * @param dispatcher Dispatcher to remove.
+	 */
+	synchronized void remove(DataObjectDispatcher dispatcher) {
+		Route route = routes.remove(dispatcher);
+		if (route == null) {
+			return;
+		}
+		if (route.spaceId == null) {
+			globalRoutes.remove(route);
+		} else {
+			List<Route> spaceRoutes = routesBySpace.get(route.spaceId);
+			if (spaceRoutes != null) {
+				spaceRoutes.remove(route);
+				if (spaceRoutes.isEmpty()) {
+					routesBySpace.remove(route.spaceId);
+				}
+			}
+		}
+		if (route.filter != null) {
+			SharedFilter sharedFilter = sharedFilters.get(route.filter);
+			if (sharedFilter != null && --sharedFilter.references == 0) {
+				sharedFilters.remove(route.filter);
+			}
+		}
+	}
+	
+	/**
+	 * Routes a data object to all interested dispatchers.
+	 * @param dataObject Data object to route.
+	 * @param spaceId Identifier of the space the data object was published on.
+	 */
+	void route(DataObject dataObject, String spaceId) {
+		Map<DataObjectFilter, Boolean> results = route(globalRoutes, dataObject, spaceId, null);
+		List<Route> spaceRoutes = routesBySpace.get(spaceId.toLowerCase());
+		if (spaceRoutes != null) {
+			route(spaceRoutes, dataObject, spaceId, results);
+		}
+	}
+	
+	private Map<DataObjectFilter, Boolean> route(List<Route> routes, DataObject dataObject, String spaceId, Map<DataObjectFilter, Boolean> results) {
+		for (Route route : routes) {
+			if (route.compiledFilter != null) {
+				if (results == null) {
+					results = new IdentityHashMap<DataObjectFilter, Boolean>();
+				}
+				Boolean isValid = results.get(route.compiledFilter);
+				if (isValid == null) {
+					isValid = route.compiledFilter.isDataObjectValid(dataObject);
+					results.put(route.compiledFilter, isValid);
+				}
+				if (!isValid) {
+					continue;
+				}
+			}
+			route.dispatcher.dispatch(dataObject, spaceId);
+		}
+		return results;
+	}
+}
@@ -0,0 +1,80 @@
+package de.imc.mirror.sdk.android;
+
+/**
+ * Snapshot of the delivery statistics of a data object listener.
+ * The lag is the time between the receipt of a data object and the start of the listener call-back.
+ */
+public class ListenerStatistics {
+	private final int queueSize;
+	private final int capacity;
+	private final long deliveredCount;
+	private final long droppedCount;
+	private final long lastLag;
+	private final long maxLag;
+	
+	/**
+	 * Creates a statistics snapshot.
+	 * @param queueSize Number of data objects waiting for delivery.
+	 * @param capacity Maximum number of data objects waiting for delivery.
+	 * @param deliveredCount Number of data objects delivered to the listener.
+	 * @param droppedCount Number of data objects discarded because the queue was full.
+	 * @param lastLag Lag of the last delivered data object in milliseconds.
+	 * @param maxLag Maximum lag of all delivered data objects in milliseconds.
+	 */
+	protected ListenerStatistics(int queueSize, int capacity, long deliveredCount, long droppedCount, long lastLag, long maxLag) {
+		this.queueSize = queueSize;
+		this.capacity = capacity;
+		this.deliveredCount = deliveredCount;
+		this.droppedCount = droppedCount;
+		this.lastLag = lastLag;
+		this.maxLag = maxLag;
+	}
+	
+	/**
+	 * Returns the number of data objects waiting for delivery.
+	 * @return Number of queued data objects.
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+	
+	/**
+	 * Returns the capacity of the listener queue.
+	 * @return Maximum number of queued data objects.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of data objects delivered to the listener.
+	 * @return Number of delivered data objects.
+	 */
+	public long getDeliveredCount() {
+		return deliveredCount;
+	}
+	
+	/**
+	 * Returns the number of data objects discarded because the listener queue was full.
+	 * @return Number of dropped data objects.
+	 */
+	public long getDroppedCount() {
+		return droppedCount;
+	}
+	
+	/**
+	 * Returns the lag of the data object delivered last.
+	 * @return Lag in milliseconds. <code>0</code> if no data object was delivered yet.
+	 */
+	public long getLastLag() {
+		return lastLag;
+	}
+	
+	/**
+	 * Returns the maximum lag of all data objects delivered so far.
+	 * @return Lag in milliseconds. <code>0</code> if no data object was delivered yet.
+	 */
+	public long getMaxLag() {
+		return maxLag;
+	}
+}
@@ -0,0 +1,294 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.jivesoftware.smackx.pubsub.SimplePayload;
+
+import android.util.Log;
+import de.imc.mirror.sdk.CDMData;
+import de.imc.mirror.sdk.OfflineModeHandler.Mode;
+import de.imc.mirror.sdk.android.exceptions.RequestException;
+import de.imc.mirror.sdk.android.utils.DaemonThreadFactory;
+import de.imc.mirror.sdk.cdm.CDMData_2_0;
+import de.imc.mirror.sdk.exceptions.UnknownEntityException;
+
+/**
+ * Persistent queue of data objects published while the data handler was offline.
+ * The entries are stored in the send cache and published on a background thread as soon as the handler is online again.
+ * Up to the configured publishing window of entries are published in parallel. An entry is only deleted when the
+ * spaces service acknowledged or rejected it. Failed attempts are retried with exponential backoff.
+ * Entries for a space which is not available for several attempts are discarded.
+ * If coalescing is enabled, a queued entry is discarded when a newer entry for the same logical object is added, or when an
+ * entry updating the queued data object is added. Therefore, only the latest version of a chain of updates is published.
+ */
+class Outbox {
+	private static final long INITIAL_BACKOFF = 1000l;
+	private static final long MAX_BACKOFF = 300000l;
+	private static final int MAX_UNKNOWN_SPACE_ATTEMPTS = 5;
+	private static final long SHUTDOWN_TIMEOUT = 5000l;
+
+	/**
+	 * Entry of the outbox.
+	 */
+	static class Entry {
+		final String id;
+		final String spaceId;
+		final SimplePayload payload;
+		final int attempts;
+
+		/**
+		 * Creates an outbox entry.
+		 * @param id Identifier of the entry. Used as pubsub item id when publishing.
+		 * @param spaceId Identifier of the space to publish the payload on.
+		 * @param payload Payload to publish.
+		 * @param attempts Number of failed publishing attempts.
+		 */
+		Entry(String id, String spaceId, SimplePayload payload, int attempts) {
+			this.id = id;
+			this.spaceId = spaceId;
+			this.payload = payload;
+			this.attempts = attempts;
+		}
+	}
+
+	private final DataHandler dataHandler;
+	private final DataWrapper datawrapper;
+	private final String user;
+	private final int windowSize;
+	private final boolean isCoalescingEnabled;
+	private final Semaphore window;
+	private final ScheduledExecutorService executor;
+	private final Runnable drainTask;
+	private ScheduledFuture<?> scheduledDrain;
+	private long scheduledDrainTime;
+	private volatile boolean isShutdown = false;
+
+	/**
+	 * Creates the outbox for the given user.
+	 * Entries which were in flight when the application was stopped are queued again. This only happens for the first outbox
+	 * created for the user in this process, entries in flight of another outbox of the same user are not touched.
+	 * @param dataHandler Data handler to publish the entries with.
+	 * @param datawrapper Wrapper for the local database.
+	 * @param user Bare JID of the user.
+	 * @param windowSize Maximum number of entries published in parallel.
+	 * @param isCoalescingEnabled <code>true</code> to discard queued entries superseded by newer ones, otherwise <code>false</code>.
+	 */
+	Outbox(DataHandler dataHandler, DataWrapper datawrapper, String user, int windowSize, boolean isCoalescingEnabled) {
+		this.dataHandler = dataHandler;
+		this.datawrapper = datawrapper;
+		this.user = user;
+		this.windowSize = windowSize;
+		this.isCoalescingEnabled = isCoalescingEnabled;
+		this.window = new Semaphore(windowSize);
+		this.executor = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("Outbox"));
+		this.drainTask = new Runnable() {
+			@Override
+			public void run() {
+				synchronized (Outbox.this) {
+					scheduledDrain = null;
+				}
+				try {
+					drainQueue();
+				} catch (InterruptedException e) {
+					Log.d("Outbox", "Draining the outbox was interrupted.", e);
+				} catch (RuntimeException e) {
+					Log.w("Outbox", "Failed to drain the outbox.", e);
+				}
+			}
+		};
+		datawrapper.resetInFlightPayloads(user);
+	}
+
+	/**
+	 * Adds a data object to the outbox.
+	 * @param id Identifier of the entry. Used as pubsub item id when publishing.
+	 * @param spaceId Identifier of the space to publish the payload on.
+	 * @param object Data object to publish.
+	 * @param payload Payload to publish.
+	 */
+	void add(String id, String spaceId, DataObject object, SimplePayload payload) {
+		String coalesceKey = null;
+		String updatedObjectId = null;
+		if (isCoalescingEnabled) {
+			coalesceKey = getCoalesceKey(object);
+			CDMData cdmData = object.getCDMData();
+			if (cdmData instanceof CDMData_2_0) {
+				updatedObjectId = ((CDMData_2_0) cdmData).getUpdatedObjectId();
+			}
+		}
+		datawrapper.savePayloadToSend(user, id, spaceId, payload, coalesceKey, object.getId(), updatedObjectId);
+	}
+
+	/**
+	 * Returns the key identifying the logical object a data object represents.
+	 * Data objects with a custom identifier are identified by namespace and custom identifier.
+	 * Other data objects are identified by the object they update.
+	 * @param object Data object to create key for.
+	 * @return Key string or <code>null</code> if the data object neither has a custom identifier nor updates another object.
+	 */
+	private static String getCoalesceKey(DataObject object) {
+		CDMData cdmData = object.getCDMData();
+		if (!(cdmData instanceof CDMData_2_0)) {
+			return null;
+		}
+		CDMData_2_0 cdmData_2_0 = (CDMData_2_0) cdmData;
+		if (cdmData_2_0.getCustomId() != null) {
+			return "customId:" + object.getNamespaceURI() + " " + cdmData_2_0.getCustomId();
+		} else if (cdmData_2_0.getUpdatedObjectId() != null) {
+			return "updates:" + cdmData_2_0.getUpdatedObjectId();
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Starts publishing the queued entries on the background thread.
+	 * The method returns immediately.
+	 */
+	void drain() {
+		scheduleDrain(0);
+	}
+
+	/**
+	 * Stops the background thread and waits until a running drain is finished.
+	 * Results of entries in flight are ignored afterwards, so that the outbox does not access the database anymore.
+	 * These entries are queued again when the application is started the next time.
+	 */
+	void shutdown() {
+		synchronized (this) {
+			isShutdown = true;
+			executor.shutdownNow();
+			scheduledDrain = null;
+		}
+		try {
+			if (!executor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				Log.w("Outbox", "The outbox thread did not stop within " + SHUTDOWN_TIMEOUT + " ms.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Schedules draining the outbox, unless a drain is already scheduled earlier.
+	 * @param delay Delay in milliseconds.
+	 */
+	private synchronized void scheduleDrain(long delay) {
+		if (executor.isShutdown()) {
+			return;
+		}
+		long drainTime = System.currentTimeMillis() + delay;
+		if (scheduledDrain != null) {
+			if (scheduledDrainTime <= drainTime) {
+				return;
+			}
+			scheduledDrain.cancel(false);
+		}
+		scheduledDrainTime = drainTime;
+		scheduledDrain = executor.schedule(drainTask, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Publishes all entries which are due, keeping up to the window size of entries in flight.
+	 * Returns when no due entries are left and schedules the next drain for entries waiting for a retry.
+	 * @throws InterruptedException The thread was interrupted while waiting for a free slot in the window.
+	 */
+	private void drainQueue() throws InterruptedException {
+		while (dataHandler.getMode() == Mode.ONLINE) {
+			List<Entry> entries = datawrapper.getDuePayloadsToSend(user, System.currentTimeMillis(), windowSize);
+			if (entries.isEmpty()) {
+				break;
+			}
+			for (Entry entry : entries) {
+				window.acquire();
+				if (dataHandler.getMode() != Mode.ONLINE) {
+					window.release();
+					return;
+				}
+				publish(entry);
+			}
+		}
+		Long nextAttempt = datawrapper.getNextPayloadAttempt(user);
+		if (nextAttempt != null) {
+			scheduleDrain(Math.max(0, nextAttempt - System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * Publishes a single entry. A slot of the window has to be acquired before.
+	 * If the publishing request cannot be sent, the slot is released and the entry is queued again.
+	 * @param entry Outbox entry to publish.
+	 */
+	private void publish(final Entry entry) {
+		PublishFuture publishFuture = null;
+		try {
+			datawrapper.setPayloadInFlight(entry.id);
+			publishFuture = dataHandler.publishCachedPayload(entry.id, entry.spaceId, entry.payload);
+		} catch (UnknownEntityException e) {
+			if (entry.attempts + 1 >= MAX_UNKNOWN_SPACE_ATTEMPTS) {
+				// the space was deleted or the user is no longer member of it
+				Log.w("Outbox", "Cached payload " + entry.id + " is discarded: Space " + entry.spaceId + " is not available after " + (entry.attempts + 1) + " failed attempts.", e);
+				datawrapper.deletePayloadToSend(entry.id);
+			} else {
+				Log.w("Outbox", "Failed to publish cached payload " + entry.id + ": Space " + entry.spaceId + " is not available.", e);
+				retryLater(entry);
+			}
+		} catch (RequestException e) {
+			Log.d("Outbox", "Failed to publish cached payload " + entry.id + ".", e);
+			retryLater(entry);
+		} catch (RuntimeException e) {
+			Log.w("Outbox", "Failed to publish cached payload " + entry.id + ".", e);
+			retryLater(entry);
+		} finally {
+			if (publishFuture == null) {
+				window.release();
+			}
+		}
+		if (publishFuture == null) {
+			return;
+		}
+		publishFuture.addListener(new PublishListener() {
+			@Override
+			public void handlePublishResult(PublishFuture future) {
+				try {
+					if (isShutdown) {
+						// the entry stays in flight and is queued again with the next start
+						return;
+					}
+					switch (future.getStatus()) {
+					case PUBLISHED:
+						datawrapper.deletePayloadToSend(entry.id);
+						break;
+					case REJECTED:
+						Log.w("Outbox", "Cached payload " + entry.id + " was rejected by the spaces service and is discarded: " + future.getException().getMessage());
+						datawrapper.deletePayloadToSend(entry.id);
+						break;
+					default:
+						Log.d("Outbox", "Failed to publish cached payload " + entry.id + ", retrying later: " +
+								(future.getException() != null ? future.getException().getMessage() : future.getStatus()));
+						retryLater(entry);
+					}
+				} finally {
+					window.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queues an entry again after a failed attempt, delayed by an exponential backoff.
+	 * @param entry Outbox entry which failed to be published.
+	 */
+	private void retryLater(Entry entry) {
+		int attempts = entry.attempts + 1;
+		long backoff = INITIAL_BACKOFF << Math.min(attempts - 1, 16);
+		backoff = Math.min(backoff, MAX_BACKOFF);
+		datawrapper.reschedulePayloadToSend(entry.id, attempts, System.currentTimeMillis() + backoff);
+		scheduleDrain(backoff);
+	}
+}
@@ -11,7 +11,6 @@ import org.jivesoftware.smackx.pubsub.provider.AffiliationsProvider;
 import org.jivesoftware.smackx.pubsub.provider.ConfigEventProvider;
 import org.jivesoftware.smackx.pubsub.provider.EventProvider;
 import org.jivesoftware.smackx.pubsub.provider.FormNodeProvider;
-import org.jivesoftware.smackx.pubsub.provider.ItemProvider;
 import org.jivesoftware.smackx.pubsub.provider.ItemsProvider;
 import org.jivesoftware.smackx.pubsub.provider.PubSubProvider;
 import org.jivesoftware.smackx.pubsub.provider.RetractEventProvider;
@@ -20,6 +19,7 @@ import org.jivesoftware.smackx.pubsub.provider.SubscriptionProvider;
 import org.jivesoftware.smackx.pubsub.provider.SubscriptionsProvider;
 
 import de.imc.mirror.sdk.config.NamespaceConfig;
+import de.imc.mirror.sdk.android.packet.PayloadItemProvider;
 import de.imc.mirror.sdk.android.packet.PersistenceServiceDeleteProvider;
 import de.imc.mirror.sdk.android.packet.PersistenceServiceQueryProvider;
 
@@ -62,9 +62,9 @@ public class ProviderInitializer {
         pm.addExtensionProvider("purge", NamespaceConfig.XMPP_PUBSUB + "#event", new SimpleNodeProvider());
         pm.addExtensionProvider("items", NamespaceConfig.XMPP_PUBSUB, new ItemsProvider());
         pm.addExtensionProvider("items", NamespaceConfig.XMPP_PUBSUB + "#event", new ItemsProvider());
-        pm.addExtensionProvider("item", NamespaceConfig.XMPP_PUBSUB, new ItemProvider());
-        pm.addExtensionProvider("item", NamespaceConfig.XMPP_PUBSUB + "#event", new ItemProvider());
-        pm.addExtensionProvider("item", "", new ItemProvider());
+        pm.addExtensionProvider("item", NamespaceConfig.XMPP_PUBSUB, new PayloadItemProvider());
+        pm.addExtensionProvider("item", NamespaceConfig.XMPP_PUBSUB + "#event", new PayloadItemProvider());
+        pm.addExtensionProvider("item", "", new PayloadItemProvider());
         
         pm.addExtensionProvider("headers", "http://jabber.org/protocol/shim", new HeadersProvider());
         pm.addExtensionProvider("header", "http://jabber.org/protocol/shim", new HeaderProvider());
@@ -0,0 +1,262 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jivesoftware.smack.packet.IQ;
+import org.jivesoftware.smack.packet.XMPPError;
+
+import android.util.Log;
+import de.imc.mirror.sdk.exceptions.InvalidDataException;
+import de.imc.mirror.sdk.android.exceptions.RequestException;
+
+/**
+ * Completion handle for an asynchronous publishing request.
+ * The request is completed when the spaces service acknowledged or rejected the data object,
+ * when the object was stored in the send cache, or when the request failed or timed out.
+ * The result of the future is the identifier of the pubsub item published.
+ */
+public class PublishFuture implements Future<String> {
+
+	/**
+	 * Status of a publishing request.
+	 */
+	public enum Status {
+		/**
+		 * The request is sent, but not answered yet.
+		 */
+		PENDING,
+		/**
+		 * The data object was published on the pubsub node of the space.
+		 */
+		PUBLISHED,
+		/**
+		 * The handler is offline. The data object is stored locally and published when the connection is established again.
+		 */
+		CACHED,
+		/**
+		 * The data object was rejected by the spaces service, e.g., because it is invalid. Publishing it again will fail again.
+		 */
+		REJECTED,
+		/**
+		 * No response was received in time.
+		 */
+		TIMED_OUT,
+		/**
+		 * The request failed for another reason, e.g., a temporary error of the service. The request may be repeated.
+		 */
+		FAILED
+	}
+
+	/**
+	 * Error conditions indicating a temporary problem of the service, independent from the error type.
+	 */
+	private static final String[] TEMPORARY_CONDITIONS = {
+		"internal-server-error",
+		"service-unavailable",
+		"resource-constraint",
+		"policy-violation",
+		"remote-server-timeout",
+		"remote-server-not-found",
+		"recipient-unavailable",
+		"request-timeout"
+	};
+
+	private final String itemId;
+	private final CountDownLatch countDownLatch;
+	private final List<PublishListener> listeners;
+	private volatile Status status;
+	private volatile Exception exception;
+	private ScheduledFuture<?> timeoutTask;
+
+	/**
+	 * Creates a pending publishing request.
+	 * @param itemId Identifier of the pubsub item to publish.
+	 */
+	protected PublishFuture(String itemId) {
+		this.itemId = itemId;
+		this.countDownLatch = new CountDownLatch(1);
+		this.listeners = new ArrayList<PublishListener>();
+		this.status = Status.PENDING;
+	}
+
+	/**
+	 * Returns the identifier of the pubsub item published with this request.
+	 * @return Pubsub item identifier.
+	 */
+	public String getItemId() {
+		return itemId;
+	}
+
+	/**
+	 * Returns the current status of the request.
+	 * @return Request status.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns the exception which caused the request to fail.
+	 * @return {@link InvalidDataException} if the data object was rejected, {@link RequestException} if the request failed or timed out, otherwise <code>null</code>.
+	 */
+	public Exception getException() {
+		return exception;
+	}
+
+	/**
+	 * Checks if the data object was successfully handled, i.e., it was published or cached for later publishing.
+	 * @return <code>true</code> if the data object was published or cached, otherwise <code>false</code>.
+	 */
+	public boolean isSuccessful() {
+		return status == Status.PUBLISHED || status == Status.CACHED;
+	}
+
+	/**
+	 * Adds a listener which is called when the request is completed.
+	 * If the request is already completed, the listener is called immediately.
+	 * @param listener Listener to add.
+	 */
+	public void addListener(PublishListener listener) {
+		synchronized (this) {
+			if (!isDone()) {
+				listeners.add(listener);
+				return;
+			}
+		}
+		notifyListener(listener);
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		// a sent request cannot be revoked
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return countDownLatch.getCount() == 0;
+	}
+
+	@Override
+	public String get() throws InterruptedException, ExecutionException {
+		countDownLatch.await();
+		return getResult();
+	}
+
+	@Override
+	public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!countDownLatch.await(timeout, unit)) {
+			// timed out
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private String getResult() throws ExecutionException {
+		if (exception != null) {
+			throw new ExecutionException(exception);
+		}
+		return itemId;
+	}
+
+	/**
+	 * Sets the task which fails the request when no response is received in time.
+	 * The task is cancelled when the request is completed.
+	 * @param timeoutTask Scheduled timeout task.
+	 */
+	protected synchronized void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+		if (isDone()) {
+			timeoutTask.cancel(false);
+		} else {
+			this.timeoutTask = timeoutTask;
+		}
+	}
+
+	/**
+	 * Completes the request with the IQ response sent by the pubsub service.
+	 * Temporary errors complete the request with {@link Status#FAILED}, all other errors with {@link Status#REJECTED}.
+	 * @param response IQ response for the publishing request.
+	 * @return <code>true</code> if the request was completed by this call, <code>false</code> if it was already completed.
+	 */
+	protected boolean setResponse(IQ response) {
+		XMPPError error = response.getError();
+		if (error == null) {
+			return complete(Status.PUBLISHED, null);
+		}
+		String message = error.getCondition() + (error.getMessage() != null ? ": " + error.getMessage() : "");
+		if (isTemporaryError(error)) {
+			return complete(Status.FAILED, new RequestException("Temporary error of the pubsub service: " + message, null));
+		} else {
+			return complete(Status.REJECTED, new InvalidDataException(message));
+		}
+	}
+
+	/**
+	 * Checks if an error returned by the pubsub service is temporary, i.e., the request may succeed when it is repeated later.
+	 * @param error Error returned by the service.
+	 * @return <code>true</code> if the error is of type WAIT or its condition indicates a problem of the service, otherwise <code>false</code>.
+	 */
+	private static boolean isTemporaryError(XMPPError error) {
+		if (error.getType() == XMPPError.Type.WAIT) {
+			return true;
+		}
+		String condition = error.getCondition();
+		if (condition == null) {
+			return false;
+		}
+		for (String temporaryCondition : TEMPORARY_CONDITIONS) {
+			if (temporaryCondition.equalsIgnoreCase(condition)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Completes the request.
+	 * @param status Final status of the request.
+	 * @param exception Exception which caused the request to fail. <code>null</code> if the request succeeded.
+	 * @return <code>true</code> if the request was completed by this call, <code>false</code> if it was already completed.
+	 */
+	protected boolean complete(Status status, Exception exception) {
+		List<PublishListener> listenersToNotify;
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+			this.status = status;
+			this.exception = exception;
+			countDownLatch.countDown();
+			if (timeoutTask != null) {
+				timeoutTask.cancel(false);
+				timeoutTask = null;
+			}
+			listenersToNotify = new ArrayList<PublishListener>(listeners);
+			listeners.clear();
+		}
+		for (PublishListener listener : listenersToNotify) {
+			notifyListener(listener);
+		}
+		return true;
+	}
+
+	private void notifyListener(PublishListener listener) {
+		try {
+			listener.handlePublishResult(this);
+		} catch (RuntimeException e) {
+			Log.w("PublishFuture", "A publish listener threw an exception.", e);
+		}
+	}
+}
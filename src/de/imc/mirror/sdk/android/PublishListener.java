@@ -0,0 +1,14 @@
+package de.imc.mirror.sdk.android;
+
+/**
+ * Interface for listeners of asynchronous publishing requests.
+ */
+public interface PublishListener {
+	
+	/**
+	 * Called when a publishing request is completed, i.e., the data object was published, cached, rejected or the request failed.
+	 * The method is called on the thread completing the request and should return quickly.
+	 * @param future Completed publishing request.
+	 */
+	public void handlePublishResult(PublishFuture future);
+}
@@ -0,0 +1,15 @@
+package de.imc.mirror.sdk.android;
+
+/**
+ * Behavior of the data handler when a data object is published while the configured publishing capacity is exhausted.
+ */
+public enum PublishOverflowPolicy {
+	/**
+	 * The publishing thread is blocked until capacity is available.
+	 */
+	BLOCK,
+	/**
+	 * The publishing request fails immediately with a {@link de.imc.mirror.sdk.android.exceptions.RequestException}.
+	 */
+	FAIL_FAST
+}
@@ -0,0 +1,124 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.imc.mirror.sdk.android.exceptions.RequestException;
+
+/**
+ * Limits the rate and the number of outstanding publishing requests.
+ * The rate is enforced by a token bucket which holds up to one second of requests.
+ */
+class PublishThrottle {
+	private final PublishOverflowPolicy policy;
+	private final Semaphore inFlightPermits;
+	private final double tokensPerMillisecond;
+	private final double maxTokens;
+	private final AtomicInteger pendingCount;
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * Creates a throttle.
+	 * @param requestsPerSecond Maximum number of publishing requests per second. <code>0</code> disables the rate limit.
+	 * @param maxInFlight Maximum number of publishing requests without response. <code>0</code> disables the limit.
+	 * @param policy Behavior if the capacity is exhausted.
+	 */
+	PublishThrottle(double requestsPerSecond, int maxInFlight, PublishOverflowPolicy policy) {
+		this.policy = policy;
+		this.inFlightPermits = maxInFlight > 0 ? new Semaphore(maxInFlight, true) : null;
+		this.tokensPerMillisecond = requestsPerSecond / 1000d;
+		this.maxTokens = Math.max(1d, requestsPerSecond);
+		this.tokens = maxTokens;
+		this.lastRefill = System.currentTimeMillis();
+		this.pendingCount = new AtomicInteger(0);
+	}
+
+	/**
+	 * Acquires the capacity for a single publishing request.
+	 * Each successful call has to be balanced by a call of {@link #release()} when the request is completed.
+	 * @throws RequestException The capacity is exhausted and the policy is {@link PublishOverflowPolicy#FAIL_FAST}, or the thread was interrupted while waiting.
+	 */
+	void acquire() throws RequestException {
+		pendingCount.incrementAndGet();
+		boolean isAcquired = false;
+		try {
+			acquireInFlightPermit();
+			try {
+				acquireToken();
+			} catch (RequestException e) {
+				if (inFlightPermits != null) {
+					inFlightPermits.release();
+				}
+				throw e;
+			}
+			isAcquired = true;
+		} finally {
+			if (!isAcquired) {
+				pendingCount.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Releases the capacity of a completed publishing request.
+	 */
+	void release() {
+		if (inFlightPermits != null) {
+			inFlightPermits.release();
+		}
+		pendingCount.decrementAndGet();
+	}
+
+	/**
+	 * Returns the number of publishing requests which are either waiting for capacity or waiting for a response.
+	 * @return Number of pending publishing requests.
+	 */
+	int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	private void acquireInFlightPermit() throws RequestException {
+		if (inFlightPermits == null) {
+			return;
+		}
+		if (policy == PublishOverflowPolicy.FAIL_FAST) {
+			if (!inFlightPermits.tryAcquire()) {
+				throw new RequestException("Too many publishing requests are waiting for a response.", null);
+			}
+		} else {
+			try {
+				inFlightPermits.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RequestException("Waiting for publishing capacity was interrupted.", e);
+			}
+		}
+	}
+
+	private void acquireToken() throws RequestException {
+		if (tokensPerMillisecond <= 0) {
+			return;
+		}
+		long waitTime;
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			tokens = Math.min(maxTokens, tokens + (now - lastRefill) * tokensPerMillisecond);
+			lastRefill = now;
+			if (tokens < 1d && policy == PublishOverflowPolicy.FAIL_FAST) {
+				throw new RequestException("The publishing rate limit is exceeded.", null);
+			}
+			// reserve the token, the balance may become negative for waiting requests
+			tokens -= 1d;
+			waitTime = tokens < 0 ? (long) Math.ceil(-tokens / tokensPerMillisecond) : 0;
+		}
+		if (waitTime > 0) {
+			try {
+				Thread.sleep(waitTime);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RequestException("Waiting for publishing capacity was interrupted.", e);
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+
+import android.util.Log;
+import de.imc.mirror.sdk.android.utils.DaemonThreadFactory;
+
+/**
+ * In-memory filter answering whether a pubsub item is already stored in the local cache.
+ * The ids of recently seen items are kept in a bounded LRU set. All other known ids are tracked in a Bloom filter.
+ * Only if the Bloom filter reports a possible match, the database is queried.
+ * The Bloom filter is built from the ids stored in the cache in a background thread. It is rebuilt with a larger size when more
+ * items are added than it is sized for, and after items are removed from the cache. Until it is built, the database is queried.
+ */
+class SeenItemFilter {
+	private static final ThreadFactory THREAD_FACTORY = new DaemonThreadFactory("SeenItemFilter");
+	private static final int BITS_PER_ITEM = 10;
+	private static final int HASH_FUNCTIONS = 7;
+	
+	private final DataWrapper datawrapper;
+	private final int minExpectedItems;
+	private final Map<String, Boolean> recentIds; // access ordered, used as LRU set
+	private BitSet bloomFilter; // null until built
+	private int bloomFilterSize;
+	private int capacity; // number of items the Bloom filter is sized for
+	private int insertedCount;
+	private List<String> idsAddedWhileBuilding; // not null while a Bloom filter is built
+	private int generation; // incremented when the cache is cleared
+	
+	/**
+	 * Creates a filter. The Bloom filter is not built before {@link #seed()} is called.
+	 * @param datawrapper Wrapper for the local database.
+	 * @param lruCapacity Number of item ids kept in the LRU set.
+	 * @param minExpectedItems Minimum number of items the Bloom filter is sized for.
+	 */
+	SeenItemFilter(DataWrapper datawrapper, final int lruCapacity, int minExpectedItems) {
+		this.datawrapper = datawrapper;
+		this.minExpectedItems = minExpectedItems;
+		this.recentIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+				return size() > lruCapacity;
+			}
+		};
+		this.bloomFilter = null;
+		this.idsAddedWhileBuilding = null;
+		this.generation = 0;
+	}
+	
+	/**
+	 * Builds the Bloom filter from the ids stored in the cache in a background thread.
+	 */
+	synchronized void seed() {
+		scheduleBuild();
+	}
+	
+	/**
+	 * Checks if an item is already stored in the cache or queued for storage.
+	 * @param itemId Identifier of the pubsub item.
+	 * @return <code>true</code> if the item is known, otherwise <code>false</code>.
+	 */
+	synchronized boolean isCached(String itemId) {
+		if (recentIds.containsKey(itemId)) {
+			return true;
+		}
+		if (bloomFilter != null && !mightContain(itemId)) {
+			return false;
+		}
+		// possible positive or Bloom filter not built yet
+		if (datawrapper.isDataObjectAlreadyCached(itemId)) {
+			recentIds.put(itemId, Boolean.TRUE);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Marks an item as stored in the cache.
+	 * @param itemId Identifier of the pubsub item.
+	 */
+	synchronized void add(String itemId) {
+		recentIds.put(itemId, Boolean.TRUE);
+		if (idsAddedWhileBuilding != null) {
+			idsAddedWhileBuilding.add(itemId);
+		}
+		if (bloomFilter != null) {
+			addToBloomFilter(bloomFilter, bloomFilterSize, itemId);
+			insertedCount++;
+			if (insertedCount > capacity) {
+				scheduleBuild();
+			}
+		}
+	}
+	
+	/**
+	 * Has to be called when items are removed from the cache.
+	 * The LRU set is cleared and the Bloom filter is rebuilt, so that the ids of the removed items don't raise its false positive rate.
+	 */
+	synchronized void invalidate() {
+		recentIds.clear();
+		scheduleBuild();
+	}
+	
+	/**
+	 * Has to be called when the cache is cleared.
+	 * A Bloom filter built concurrently is discarded.
+	 */
+	synchronized void reset() {
+		recentIds.clear();
+		generation++;
+		capacity = minExpectedItems;
+		bloomFilterSize = capacity * BITS_PER_ITEM;
+		bloomFilter = new BitSet(bloomFilterSize);
+		insertedCount = 0;
+	}
+	
+	/**
+	 * Starts a thread building a new Bloom filter, unless a filter is already built.
+	 * The caller has to hold the monitor of the filter.
+	 */
+	private void scheduleBuild() {
+		if (idsAddedWhileBuilding != null) {
+			return;
+		}
+		idsAddedWhileBuilding = new ArrayList<String>();
+		final int buildGeneration = generation;
+		THREAD_FACTORY.newThread(new Runnable() {
+			@Override
+			public void run() {
+				build(buildGeneration);
+			}
+		}).start();
+	}
+	
+	/**
+	 * Builds a Bloom filter from the ids stored in the cache and replaces the current one.
+	 * The database is read without holding the monitor. Ids added in the meantime and the ids of the LRU set, which may
+	 * still be queued for storage, are added before the filter is replaced.
+	 * @param buildGeneration Generation of the filter when the build was started.
+	 */
+	private void build(int buildGeneration) {
+		List<String> cachedIds;
+		try {
+			cachedIds = datawrapper.getCachedDataObjectIds();
+		} catch (RuntimeException e) {
+			Log.w("SeenItemFilter", "Failed to read the ids of the cached data objects.", e);
+			synchronized (this) {
+				idsAddedWhileBuilding = null;
+			}
+			return;
+		}
+		int expectedItems = Math.max(cachedIds.size() * 2, minExpectedItems);
+		int filterSize = expectedItems * BITS_PER_ITEM;
+		BitSet filter = new BitSet(filterSize);
+		for (String itemId : cachedIds) {
+			addToBloomFilter(filter, filterSize, itemId);
+		}
+		synchronized (this) {
+			if (generation == buildGeneration) {
+				for (String itemId : idsAddedWhileBuilding) {
+					addToBloomFilter(filter, filterSize, itemId);
+				}
+				for (String itemId : recentIds.keySet()) {
+					addToBloomFilter(filter, filterSize, itemId);
+				}
+				bloomFilter = filter;
+				bloomFilterSize = filterSize;
+				capacity = expectedItems;
+				insertedCount = cachedIds.size() + idsAddedWhileBuilding.size();
+			}
+			idsAddedWhileBuilding = null;
+		}
+	}
+	
+	private static void addToBloomFilter(BitSet filter, int filterSize, String itemId) {
+		int hash1 = itemId.hashCode();
+		int hash2 = secondaryHash(hash1);
+		for (int i = 0; i < HASH_FUNCTIONS; i++) {
+			filter.set(indexFor(hash1 + i * hash2, filterSize));
+		}
+	}
+	
+	private boolean mightContain(String itemId) {
+		int hash1 = itemId.hashCode();
+		int hash2 = secondaryHash(hash1);
+		for (int i = 0; i < HASH_FUNCTIONS; i++) {
+			if (!bloomFilter.get(indexFor(hash1 + i * hash2, bloomFilterSize))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static int indexFor(int hash, int filterSize) {
+		return (hash & Integer.MAX_VALUE) % filterSize;
+	}
+	
+	private static int secondaryHash(int hash) {
+		// murmur3 finalizer, odd to cover all bits
+		int h = hash;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h | 1;
+	}
+}
@@ -0,0 +1,21 @@
+package de.imc.mirror.sdk.android;
+
+import de.imc.mirror.sdk.Space;
+
+/**
+ * Listener for changes of spaces performed by the space handler.
+ * Used by other handlers to invalidate information they derived from a space.
+ */
+interface SpaceChangeListener {
+	/**
+	 * Called after a space was successfully configured.
+	 * @param space Space as it was before the configuration was applied.
+	 */
+	void spaceConfigured(Space space);
+	
+	/**
+	 * Called after a space was successfully deleted.
+	 * @param space Space which was deleted.
+	 */
+	void spaceDeleted(Space space);
+}
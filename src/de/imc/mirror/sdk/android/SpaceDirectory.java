@@ -0,0 +1,185 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.imc.mirror.sdk.Space;
+import de.imc.mirror.sdk.SpaceChannel;
+
+/**
+ * In-memory directory of the spaces cached for a user.
+ * The directory is indexed by space id and pubsub node id. Lookups do not perform any I/O.
+ * All modifications are written through to the local database.
+ */
+class SpaceDirectory {
+	private final DataWrapper datawrapper;
+	private final String user;
+	private final Map<String, Space> spacesById; // <space id, space>
+	private final Map<String, Space> spacesByNode; // <pubsub node id, space>
+	private volatile boolean isLoaded;
+
+	/**
+	 * Creates a directory for the spaces cached for the given user.
+	 * The cached spaces are loaded from the database with the first lookup.
+	 * @param datawrapper Wrapper for the local database.
+	 * @param user Bare JID of the user.
+	 */
+	SpaceDirectory(DataWrapper datawrapper, String user) {
+		this.datawrapper = datawrapper;
+		this.user = user;
+		this.spacesById = new ConcurrentHashMap<String, Space>();
+		this.spacesByNode = new ConcurrentHashMap<String, Space>();
+		this.isLoaded = false;
+	}
+
+	/**
+	 * Returns the space with the given id.
+	 * @param spaceId Identifier of the space. The case is ignored.
+	 * @return Space or <code>null</code> if no space with the given id is cached.
+	 */
+	Space getSpace(String spaceId) {
+		ensureLoaded();
+		return spacesById.get(spaceId.toLowerCase());
+	}
+
+	/**
+	 * Returns the space related to the given pubsub node.
+	 * @param nodeId Identifier of the pubsub node. The case is ignored.
+	 * @return Space or <code>null</code> if no cached space uses the given node.
+	 */
+	Space getSpaceByNode(String nodeId) {
+		ensureLoaded();
+		return spacesByNode.get(nodeId.toLowerCase());
+	}
+
+	/**
+	 * Returns all cached spaces.
+	 * @return List of spaces. May be empty.
+	 */
+	List<Space> getSpaces() {
+		ensureLoaded();
+		return new ArrayList<Space>(spacesById.values());
+	}
+
+	/**
+	 * Adds or updates a space.
+	 * @param space Space to store.
+	 */
+	synchronized void put(Space space) {
+		ensureLoaded();
+		if (datawrapper.isSpaceAlreadyCached(space.getId())) {
+			datawrapper.updateCachedSpaceInformation(space);
+		} else {
+			datawrapper.saveSpace(space, user);
+		}
+		// the space is replaced without removing it first, so that concurrent lookups always succeed
+		Space oldSpace = spacesById.get(space.getId().toLowerCase());
+		index(space);
+		if (oldSpace != null) {
+			String oldNodeId = getNodeId(oldSpace);
+			if (oldNodeId != null && !oldNodeId.equals(getNodeId(space))) {
+				spacesByNode.remove(oldNodeId);
+			}
+		}
+	}
+
+	/**
+	 * Replaces all spaces of the user.
+	 * The indexes are updated in place without clearing them, so that concurrent lookups of spaces which are still
+	 * available always succeed.
+	 * @param spaces List of spaces available for the user.
+	 */
+	synchronized void putAll(List<Space> spaces) {
+		datawrapper.deleteCachedSpacesForUser(user);
+		datawrapper.saveSpaces(spaces, user);
+		Map<String, Space> newSpacesById = new HashMap<String, Space>();
+		Map<String, Space> newSpacesByNode = new HashMap<String, Space>();
+		for (Space space : spaces) {
+			newSpacesById.put(space.getId().toLowerCase(), space);
+			String nodeId = getNodeId(space);
+			if (nodeId != null) {
+				newSpacesByNode.put(nodeId, space);
+			}
+		}
+		spacesById.putAll(newSpacesById);
+		spacesByNode.putAll(newSpacesByNode);
+		spacesById.keySet().retainAll(newSpacesById.keySet());
+		spacesByNode.keySet().retainAll(newSpacesByNode.keySet());
+		isLoaded = true;
+	}
+
+	/**
+	 * Removes a space.
+	 * If no space with the given id is stored, nothing happens.
+	 * @param spaceId Identifier of the space to remove.
+	 */
+	synchronized void remove(String spaceId) {
+		ensureLoaded();
+		datawrapper.deleteCachedSpace(spaceId);
+		unindex(spaceId);
+	}
+
+	/**
+	 * Deletes all cached spaces.
+	 */
+	synchronized void clear() {
+		datawrapper.clearSpacesCache();
+		clearIndexes();
+		isLoaded = true;
+	}
+
+	private void ensureLoaded() {
+		if (isLoaded) {
+			return;
+		}
+		synchronized (this) {
+			if (isLoaded) {
+				return;
+			}
+			for (Space space : datawrapper.getCachedSpacesForUser(user)) {
+				index(space);
+			}
+			isLoaded = true;
+		}
+	}
+
+	/**
+	 * Returns the pubsub node of a space.
+	 * @param space Space to get node for.
+	 * @return Identifier of the pubsub node in lower case or <code>null</code> if the space has no pubsub channel.
+	 */
+	private static String getNodeId(Space space) {
+		SpaceChannel channel = space.getPubSubChannel();
+		if (channel == null || channel.getProperties().get("node") == null) {
+			return null;
+		}
+		return channel.getProperties().get("node").toLowerCase();
+	}
+
+	private void index(Space space) {
+		spacesById.put(space.getId().toLowerCase(), space);
+		String nodeId = getNodeId(space);
+		if (nodeId != null) {
+			spacesByNode.put(nodeId, space);
+		}
+	}
+
+	private void unindex(String spaceId) {
+		Space space = spacesById.remove(spaceId.toLowerCase());
+		if (space == null) {
+			return;
+		}
+		String nodeId = getNodeId(space);
+		if (nodeId != null) {
+			spacesByNode.remove(nodeId);
+		}
+	}
+
+	private void clearIndexes() {
+		spacesById.clear();
+		spacesByNode.clear();
+	}
+}
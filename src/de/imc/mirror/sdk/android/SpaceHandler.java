@@ -10,6 +10,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -76,6 +77,8 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 	private Map<String, RequestFuture<Element>> pendingSpacesRequests;
 	private List<Space> spaces;
 	private DataWrapper datawrapper;
+	private SpaceDirectory spaceDirectory;
+	private List<SpaceChangeListener> spaceChangeListeners;
 	
 	private PacketListener packetListener = new PacketListener(){
 
@@ -110,7 +113,9 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 		
 		pendingSpacesRequests = new ConcurrentHashMap<String, RequestFuture<Element>>();
 		this.userInfo = this.connectionHandler.getCurrentUser();
+		this.spaceDirectory = new SpaceDirectory(datawrapper, userInfo.getBareJID());
 		this.spaces = new ArrayList<Space>();
+		this.spaceChangeListeners = new CopyOnWriteArrayList<SpaceChangeListener>();
 		connectionHandler.addConnectionStatusListener(new ConnectionStatusListener() {
 			
 			@Override
@@ -299,7 +304,7 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 					if (newSpace != null){
 						for (SpaceMember member:config.getMembers()){
 							if (member.getJID().equalsIgnoreCase(userInfo.getBareJID())){
-								datawrapper.saveSpace(newSpace, userInfo.getBareJID());
+								spaceDirectory.put(newSpace);
 								break;
 							}
 						}
@@ -368,7 +373,10 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 		if (response != null){
 			String type = response.getAttributeValue("type");
 			if ("result".equalsIgnoreCase(type)){
-				datawrapper.deleteCachedSpace(spaceId);
+				spaceDirectory.remove(spaceId);
+				for (SpaceChangeListener listener : spaceChangeListeners) {
+					listener.spaceDeleted(space);
+				}
 			}
 			else if ("error".equalsIgnoreCase(type)){
 				//TODO
@@ -580,6 +588,9 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 			if (response != null){
 				String type = response.getAttributeValue("type");
 				if ("result".equalsIgnoreCase(type)){
+					for (SpaceChangeListener listener : spaceChangeListeners) {
+						listener.spaceConfigured(space);
+					}
 					return getSpace(space.getId());
 				}
 				else if ("error".equalsIgnoreCase(type)){
@@ -980,6 +991,23 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 		}
 	}
 	
+	/**
+	 * Adds a listener which is notified when a space is configured or deleted by this handler.
+	 * @param listener Listener to add.
+	 */
+	void addSpaceChangeListener(SpaceChangeListener listener) {
+		spaceChangeListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a space change listener.
+	 * If the listener is not registered, nothing happens.
+	 * @param listener Listener to remove.
+	 */
+	void removeSpaceChangeListener(SpaceChangeListener listener) {
+		spaceChangeListeners.remove(listener);
+	}
+	
 	/**
 	 * Called when the mode provided by the connection is changed to online or the user sets the mode to online.
 	 * If Handler is in onlinemode some preparations are done like checking and perhaps retrieving the spaces service adress.
@@ -1055,13 +1083,12 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 				space = retrieveAllSpaceInformation(space);
 				result.add(space);
 			}
-			datawrapper.deleteCachedSpacesForUser(userInfo.getBareJID());
-			datawrapper.saveSpaces(result, userInfo.getBareJID());
+			spaceDirectory.putAll(result);
 			} catch (SpaceManagementException e) {
 				Log.d("SpaceHandler", "A SpaceManagementException was thrown while retrieving all spaces.", e);
 			} 
 		} else {
-			spaces = datawrapper.getCachedSpacesForUser(userInfo.getBareJID());
+			spaces = spaceDirectory.getSpaces();
 			return Collections.unmodifiableList(spaces);
 		}
 		return Collections.unmodifiableList(result);
@@ -1112,23 +1139,15 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 				if (result == null) {
 					return null;
 				}
-				if (datawrapper.isSpaceAlreadyCached(spaceId)){
-					datawrapper.updateCachedSpaceInformation(result);
-				} else datawrapper.saveSpace(result, userInfo.getBareJID());
+				spaceDirectory.put(result);
 			} catch (SpaceManagementException e) {
 				Log.d("SpaceHandler", "A SpaceManagementException was thrown while retrieving a single space.", e);
 				result = null;
 			}
 			return result;
 		} else {
-			spaces = datawrapper.getCachedSpacesForUser(userInfo.getBareJID());
-			for (Space space:spaces){
-				if (space.getId().equalsIgnoreCase(spaceId)){
-					return space;
-				}
-			}
+			return spaceDirectory.getSpace(spaceId);
 		}
-		return null;
 	}
 	
 	/**
@@ -1136,7 +1155,15 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 	 * @return List of cached spaces, may be empty.
 	 */
 	protected List<Space> getCachedSpaces() {
-		return datawrapper.getCachedSpacesForUser(userInfo.getBareJID());
+		return spaceDirectory.getSpaces();
+	}
+	
+	/**
+	 * Returns the in-memory directory of the spaces cached for the current user.
+	 * @return Space directory.
+	 */
+	protected SpaceDirectory getSpaceDirectory() {
+		return spaceDirectory;
 	}
 
 	/**
@@ -1160,7 +1187,7 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 				Log.d("SpaceHandler", "A SpaceManagementException was thrown while retrieving a list of all spaces.", e);
 			}
 		}
-		spaces = datawrapper.getCachedSpacesForUser(userInfo.getBareJID());
+		spaces = spaceDirectory.getSpaces();
 		for (Space space:spaces){
 			spacesMap.put(space.getId(), space.getName());
 		}
@@ -1172,7 +1199,7 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 	 */
 	@Override
 	public void clear() {
-		datawrapper.clearSpacesCache();	
+		spaceDirectory.clear();
 	}
 	
 	/**
@@ -1224,11 +1251,9 @@ public class SpaceHandler implements de.imc.mirror.sdk.OfflineModeHandler, de.im
 	 */
 	protected SpaceChannel getPubSubChannel(String spaceId) throws UnknownEntityException {
 		// Try to retrieve data from cache. 
-		List<Space> spacesList = datawrapper.getCachedSpacesForUser(userInfo.getBareJID());
-		for (Space space:spacesList) {
-			if (space.getId().equalsIgnoreCase(spaceId)){
-				return space.getPubSubChannel();
-			}
+		Space cachedSpace = spaceDirectory.getSpace(spaceId);
+		if (cachedSpace != null) {
+			return cachedSpace.getPubSubChannel();
 		}
 		
 		// Request data.
@@ -13,10 +13,19 @@ public class ChannelsTable {
 	public static final String VALUE = "value";
 	public static final String SQL_CREATE = 
 										"CREATE TABLE " + TABLE_NAME + " (" +
-										SPACE + " STRING NOT NULL," +
-										TYPE + " STRING NOT NULL," +
-										KEY + " STRING NOT NULL," +
-										VALUE + " STRING NOT NULL);";
+										SPACE + " TEXT NOT NULL," +
+										TYPE + " TEXT NOT NULL," +
+										KEY + " TEXT NOT NULL," +
+										VALUE + " TEXT NOT NULL," +
+										"PRIMARY KEY (" + SPACE + ", " + TYPE + ", " + KEY + "));";
+
+	private static final String COLUMNS_4 = SPACE + ", " + TYPE + ", " + KEY + ", " + VALUE;
+	public static final String[] SQL_UPGRADE_5 = {
+										"ALTER TABLE " + TABLE_NAME + " RENAME TO " + TABLE_NAME + "_old;",
+										SQL_CREATE,
+										"INSERT OR REPLACE INTO " + TABLE_NAME + " (" + COLUMNS_4 + ") SELECT " + COLUMNS_4 + " FROM " + TABLE_NAME + "_old ORDER BY rowid;",
+										"DROP TABLE " + TABLE_NAME + "_old;"
+	};
 
 	public static final String SQL_DROP = "DROP TABLE IF EXISTS " + TABLE_NAME + ";";
 
@@ -1,12 +1,22 @@
 package de.imc.mirror.sdk.android.data;
 
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
 
 public class DataDB extends SQLiteOpenHelper {
 	
-	private static final int DB_VERSION = 4;
+	private static final int DB_VERSION = 5;
 	
 	public DataDB(Context context, String dbName){
 		super(context, dbName, null, DB_VERSION);
@@ -15,20 +25,69 @@ public class DataDB extends SQLiteOpenHelper {
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		db.execSQL(SpacesTable.SQL_CREATE);
+		db.execSQL(SpacesTable.SQL_CREATE_USER_INDEX);
 		db.execSQL(SendTable.SQL_CREATE);
+		db.execSQL(SendTable.SQL_CREATE_QUEUE_INDEX);
 		db.execSQL(DataTable.SQL_CREATE);
+		db.execSQL(DataTable.SQL_CREATE_NODE_INDEX);
+		db.execSQL(DataTable.SQL_CREATE_OBJECT_ID_INDEX);
+		db.execSQL(DataTable.SQL_CREATE_TIMESTAMP_INDEX);
+		db.execSQL(DataTable.SQL_CREATE_REF_INDEX);
 		db.execSQL(ChannelsTable.SQL_CREATE);
 		db.execSQL(MembersTable.SQL_CREATE);
 	}
 
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		db.execSQL(SpacesTable.SQL_DROP);
-		db.execSQL(SendTable.SQL_DROP);
-		db.execSQL(DataTable.SQL_DROP);
-		db.execSQL(MembersTable.SQL_DROP);
-		db.execSQL(ChannelsTable.SQL_DROP);
-		onCreate(db);
+		if (oldVersion < 4) {
+			db.execSQL(SpacesTable.SQL_DROP);
+			db.execSQL(SendTable.SQL_DROP);
+			db.execSQL(DataTable.SQL_DROP);
+			db.execSQL(MembersTable.SQL_DROP);
+			db.execSQL(ChannelsTable.SQL_DROP);
+			onCreate(db);
+			return;
+		}
+		if (oldVersion < 5) {
+			// Rebuild all tables with keys and indexes, keeping the cached data. Duplicate rows are dropped.
+			// The helper runs the upgrade in a single transaction.
+			String[][] upgrades = {SpacesTable.SQL_UPGRADE_5, SendTable.SQL_UPGRADE_5, DataTable.SQL_UPGRADE_5,
+					ChannelsTable.SQL_UPGRADE_5, MembersTable.SQL_UPGRADE_5};
+			for (String[] upgrade : upgrades) {
+				for (String statement : upgrade) {
+					db.execSQL(statement);
+				}
+			}
+			backfillMetadata(db);
+		}
+	}
+
+	/**
+	 * Extracts the metadata of all cached data objects from their payloads and stores it in the metadata columns.
+	 * Payloads which cannot be parsed are skipped.
+	 * @param db Database to update.
+	 */
+	private void backfillMetadata(SQLiteDatabase db) {
+		Cursor c = db.query(DataTable.TABLE_NAME, new String[] {"rowid", DataTable.DATA_PAYLOAD}, null, null, null, null, null);
+		try {
+			SAXBuilder reader = new SAXBuilder();
+			while (c.moveToNext()) {
+				Element element;
+				try {
+					element = reader.build(new StringReader(c.getString(1))).getRootElement();
+				} catch (JDOMException e) {
+					Log.d("DataDB", "Failed to parse cached payload.", e);
+					continue;
+				} catch (IOException e) {
+					Log.d("DataDB", "Failed to parse cached payload.", e);
+					continue;
+				}
+				ContentValues values = DataObjectMetadata.fromElement(element).toContentValues();
+				db.update(DataTable.TABLE_NAME, values, "rowid=?", new String[] {Long.toString(c.getLong(0))});
+			}
+		} finally {
+			c.close();
+		}
 	}
 
 }
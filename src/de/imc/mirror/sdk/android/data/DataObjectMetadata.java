@@ -0,0 +1,129 @@
+package de.imc.mirror.sdk.android.data;
+
+import org.jdom2.Attribute;
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteStatement;
+import de.imc.mirror.sdk.android.utils.DatatypeConverter;
+
+/**
+ * Metadata of a data object stored in separate columns of the data table.
+ * The values are read from the attributes of the payload element without verifying the CDM information.
+ */
+public class DataObjectMetadata {
+	/**
+	 * Comma separated list of the columns holding the metadata, in the order the values are bound.
+	 */
+	public static final String COLUMNS = DataTable.DATA_OBJECT_ID + ", " + DataTable.DATA_TIMESTAMP + ", " + DataTable.DATA_PUBLISHER + ", " +
+			DataTable.DATA_REF + ", " + DataTable.DATA_MODEL_VERSION + ", " + DataTable.DATA_CDM_VERSION + ", " + DataTable.DATA_CUSTOM_ID + ", " +
+			DataTable.DATA_UPDATES + ", " + DataTable.DATA_COPY_OF + ", " + DataTable.DATA_SCHEMA_LOCATION;
+	/**
+	 * Placeholders for the metadata columns, e.g., to be used in an INSERT statement.
+	 */
+	public static final String PLACEHOLDERS = "?,?,?,?,?,?,?,?,?,?";
+
+	private final String objectId;
+	private final Long timestamp;
+	private final String publisher;
+	private final String ref;
+	private final String modelVersion;
+	private final String cdmVersion;
+	private final String customId;
+	private final String updates;
+	private final String copyOf;
+	private final String schemaLocation;
+
+	private DataObjectMetadata(Element element) {
+		this.objectId = element.getAttributeValue("id");
+		this.timestamp = parseTimestamp(element.getAttributeValue("timestamp"));
+		this.publisher = element.getAttributeValue("publisher");
+		this.ref = element.getAttributeValue("ref");
+		this.modelVersion = element.getAttributeValue("modelVersion");
+		this.cdmVersion = element.getAttributeValue("cdmVersion");
+		this.customId = element.getAttributeValue("customId");
+		this.updates = element.getAttributeValue("updates");
+		this.copyOf = element.getAttributeValue("copyOf");
+		this.schemaLocation = getSchemaLocation(element);
+	}
+
+	/**
+	 * Extracts the metadata from the payload element of a data object.
+	 * @param element Root element of the data object.
+	 * @return Metadata of the data object.
+	 */
+	public static DataObjectMetadata fromElement(Element element) {
+		return new DataObjectMetadata(element);
+	}
+
+	private static String getSchemaLocation(Element element) {
+		Namespace ns = element.getNamespace("xsi");
+		if (ns == null) {
+			return null;
+		}
+		Attribute schemaLocationAttribute = element.getAttribute("schemaLocation", ns);
+		return schemaLocationAttribute != null ? schemaLocationAttribute.getValue() : null;
+	}
+
+	private static Long parseTimestamp(String timestampString) {
+		if (timestampString == null) {
+			return null;
+		}
+		try {
+			return DatatypeConverter.parseDateTime(timestampString).getTimeInMillis();
+		} catch (IllegalArgumentException e) {
+			// invalid timestamp
+			return null;
+		}
+	}
+
+	/**
+	 * Binds the metadata to a compiled statement.
+	 * @param statement Statement to bind the values to.
+	 * @param startIndex Index of the first parameter to bind. The values are bound in the order of {@link #COLUMNS}.
+	 */
+	public void bind(SQLiteStatement statement, int startIndex) {
+		bindString(statement, startIndex, objectId);
+		if (timestamp != null) {
+			statement.bindLong(startIndex + 1, timestamp);
+		} else {
+			statement.bindNull(startIndex + 1);
+		}
+		bindString(statement, startIndex + 2, publisher);
+		bindString(statement, startIndex + 3, ref);
+		bindString(statement, startIndex + 4, modelVersion);
+		bindString(statement, startIndex + 5, cdmVersion);
+		bindString(statement, startIndex + 6, customId);
+		bindString(statement, startIndex + 7, updates);
+		bindString(statement, startIndex + 8, copyOf);
+		bindString(statement, startIndex + 9, schemaLocation);
+	}
+
+	private static void bindString(SQLiteStatement statement, int index, String value) {
+		if (value != null) {
+			statement.bindString(index, value);
+		} else {
+			statement.bindNull(index);
+		}
+	}
+
+	/**
+	 * Returns the metadata as content values, e.g., to update an existing row.
+	 * @return Content values containing all metadata columns. Missing values are set to <code>null</code>.
+	 */
+	public ContentValues toContentValues() {
+		ContentValues values = new ContentValues();
+		values.put(DataTable.DATA_OBJECT_ID, objectId);
+		values.put(DataTable.DATA_TIMESTAMP, timestamp);
+		values.put(DataTable.DATA_PUBLISHER, publisher);
+		values.put(DataTable.DATA_REF, ref);
+		values.put(DataTable.DATA_MODEL_VERSION, modelVersion);
+		values.put(DataTable.DATA_CDM_VERSION, cdmVersion);
+		values.put(DataTable.DATA_CUSTOM_ID, customId);
+		values.put(DataTable.DATA_UPDATES, updates);
+		values.put(DataTable.DATA_COPY_OF, copyOf);
+		values.put(DataTable.DATA_SCHEMA_LOCATION, schemaLocation);
+		return values;
+	}
+}
@@ -12,12 +12,47 @@ public class DataTable {
 	public static final String DATA_NAME = "send_name";
 	public static final String DATA_NAMESPACE = "send_namespace";
 	public static final String DATA_PAYLOAD = "payload";
+	public static final String DATA_OBJECT_ID = "object_id";
+	public static final String DATA_TIMESTAMP = "timestamp";
+	public static final String DATA_PUBLISHER = "publisher";
+	public static final String DATA_REF = "ref";
+	public static final String DATA_MODEL_VERSION = "model_version";
+	public static final String DATA_CDM_VERSION = "cdm_version";
+	public static final String DATA_CUSTOM_ID = "custom_id";
+	public static final String DATA_UPDATES = "updates";
+	public static final String DATA_COPY_OF = "copy_of";
+	public static final String DATA_SCHEMA_LOCATION = "schema_location";
 	public static final String SQL_CREATE = "CREATE TABLE " + TABLE_NAME + " (" +
-			DATA_ID + " STRING NOT NULL," +
-			DATA_NODE + " STRING NOT NULL," +
-			DATA_NAME + " STRING NOT NULL," +
-			DATA_NAMESPACE + " STRING NOT NULL," + 
-			DATA_PAYLOAD + " STRING NOT NULL);";
+			DATA_ID + " TEXT NOT NULL PRIMARY KEY," +
+			DATA_NODE + " TEXT NOT NULL," +
+			DATA_NAME + " TEXT NOT NULL," +
+			DATA_NAMESPACE + " TEXT NOT NULL," + 
+			DATA_PAYLOAD + " TEXT NOT NULL," +
+			DATA_OBJECT_ID + " TEXT," +
+			DATA_TIMESTAMP + " INTEGER," +
+			DATA_PUBLISHER + " TEXT," +
+			DATA_REF + " TEXT," +
+			DATA_MODEL_VERSION + " TEXT," +
+			DATA_CDM_VERSION + " TEXT," +
+			DATA_CUSTOM_ID + " TEXT," +
+			DATA_UPDATES + " TEXT," +
+			DATA_COPY_OF + " TEXT," +
+			DATA_SCHEMA_LOCATION + " TEXT);";
+	public static final String SQL_CREATE_NODE_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_node_index ON " + TABLE_NAME + " (" + DATA_NODE + ");";
+	public static final String SQL_CREATE_OBJECT_ID_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_object_id_index ON " + TABLE_NAME + " (" + DATA_OBJECT_ID + ");";
+	public static final String SQL_CREATE_TIMESTAMP_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_timestamp_index ON " + TABLE_NAME + " (" + DATA_TIMESTAMP + ");";
+	public static final String SQL_CREATE_REF_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_ref_index ON " + TABLE_NAME + " (" + DATA_REF + ");";
+	private static final String COLUMNS_4 = DATA_ID + ", " + DATA_NODE + ", " + DATA_NAME + ", " + DATA_NAMESPACE + ", " + DATA_PAYLOAD;
+	public static final String[] SQL_UPGRADE_5 = {
+										"ALTER TABLE " + TABLE_NAME + " RENAME TO " + TABLE_NAME + "_old;",
+										SQL_CREATE,
+										"INSERT OR IGNORE INTO " + TABLE_NAME + " (" + COLUMNS_4 + ") SELECT " + COLUMNS_4 + " FROM " + TABLE_NAME + "_old ORDER BY rowid;",
+										"DROP TABLE " + TABLE_NAME + "_old;",
+										SQL_CREATE_NODE_INDEX,
+										SQL_CREATE_OBJECT_ID_INDEX,
+										SQL_CREATE_TIMESTAMP_INDEX,
+										SQL_CREATE_REF_INDEX
+	};
 
 	public static final String SQL_DROP = "DROP TABLE IF EXISTS " + TABLE_NAME + ";";
 
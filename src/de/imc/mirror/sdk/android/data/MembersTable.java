@@ -12,9 +12,18 @@ public class MembersTable {
 	public static final String BAREJID = "barejid";
 	public static final String SQL_CREATE = 
 			"CREATE TABLE " + TABLE_NAME + " (" +
-			SPACE + " STRING NOT NULL," +
-			ROLE + " STRING NOT NULL," +
-			BAREJID + " STRING NOT NULL);";
+			SPACE + " TEXT NOT NULL," +
+			ROLE + " TEXT NOT NULL," +
+			BAREJID + " TEXT NOT NULL," +
+			"PRIMARY KEY (" + SPACE + ", " + BAREJID + "));";
+
+	private static final String COLUMNS_4 = SPACE + ", " + ROLE + ", " + BAREJID;
+	public static final String[] SQL_UPGRADE_5 = {
+			"ALTER TABLE " + TABLE_NAME + " RENAME TO " + TABLE_NAME + "_old;",
+			SQL_CREATE,
+			"INSERT OR REPLACE INTO " + TABLE_NAME + " (" + COLUMNS_4 + ") SELECT " + COLUMNS_4 + " FROM " + TABLE_NAME + "_old ORDER BY rowid;",
+			"DROP TABLE " + TABLE_NAME + "_old;"
+	};
 
 	public static final String SQL_DROP = "DROP TABLE IF EXISTS " + TABLE_NAME + ";";
 
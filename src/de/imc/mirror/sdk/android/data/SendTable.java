@@ -13,14 +13,39 @@ public class SendTable {
 	public static final String SEND_NAMESPACE = "send_namespace";
 	public static final String SEND_PAYLOAD = "payload";
 	public static final String USER = "user";
+	public static final String SEND_STATE = "state";
+	public static final String SEND_ATTEMPTS = "attempts";
+	public static final String SEND_NEXT_ATTEMPT = "next_attempt";
+	public static final String SEND_COALESCE_KEY = "coalesce_key";
+	public static final String SEND_OBJECT_ID = "object_id";
+	
+	public static final String STATE_QUEUED = "queued";
+	public static final String STATE_IN_FLIGHT = "in_flight";
+	
 	public static final String SQL_CREATE = 
 										"CREATE TABLE " + TABLE_NAME + " (" +
-										SEND_ID + " STRING NOT NULL," +
-										SEND_SPACE + " STRING NOT NULL," +
-										SEND_NAME + " STRING NOT NULL," +
-										SEND_NAMESPACE + " STRING NOT NULL," + 
-										SEND_PAYLOAD + " STRING NOT NULL," +
-										USER + " STRING NOT NULL);";
+										SEND_ID + " TEXT NOT NULL PRIMARY KEY," +
+										SEND_SPACE + " TEXT NOT NULL," +
+										SEND_NAME + " TEXT NOT NULL," +
+										SEND_NAMESPACE + " TEXT NOT NULL," + 
+										SEND_PAYLOAD + " TEXT NOT NULL," +
+										USER + " TEXT NOT NULL," +
+										SEND_STATE + " TEXT NOT NULL DEFAULT '" + STATE_QUEUED + "'," +
+										SEND_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0," +
+										SEND_NEXT_ATTEMPT + " INTEGER NOT NULL DEFAULT 0," +
+										SEND_COALESCE_KEY + " TEXT," +
+										SEND_OBJECT_ID + " TEXT);";
+	public static final String SQL_CREATE_QUEUE_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_queue_index ON " + TABLE_NAME +
+										" (" + USER + ", " + SEND_STATE + ", " + SEND_NEXT_ATTEMPT + ");";
+
+	private static final String COLUMNS_4 = SEND_ID + ", " + SEND_SPACE + ", " + SEND_NAME + ", " + SEND_NAMESPACE + ", " + SEND_PAYLOAD + ", " + USER;
+	public static final String[] SQL_UPGRADE_5 = {
+										"ALTER TABLE " + TABLE_NAME + " RENAME TO " + TABLE_NAME + "_old;",
+										SQL_CREATE,
+										"INSERT OR IGNORE INTO " + TABLE_NAME + " (" + COLUMNS_4 + ") SELECT " + COLUMNS_4 + " FROM " + TABLE_NAME + "_old ORDER BY rowid;",
+										"DROP TABLE " + TABLE_NAME + "_old;",
+										SQL_CREATE_QUEUE_INDEX
+	};
 
 	public static final String SQL_DROP = "DROP TABLE IF EXISTS " + TABLE_NAME + ";";
 
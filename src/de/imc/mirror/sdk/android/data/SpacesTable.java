@@ -16,13 +16,25 @@ public class SpacesTable {
 	public static final String USER = "user";
 	public static final String SQL_CREATE = 
 			"CREATE TABLE " + TABLE_NAME + " (" +
-			SPACE_ID + " STRING NOT NULL," +
-			SPACE_NAME + " STRING NOT NULL," +
-			SPACE_DOMAIN + " STRING NOT NULL, " +
-			SPACE_TYPE + " STRING NOT NULL, " +
-			SPACE_PERSISTENTTYPE + " STRING NOT NULL, " +
-			SPACE_PERSISTENTDURATION + " STRING, " +
-			USER + " STRING NOT NULL);";
+			SPACE_ID + " TEXT NOT NULL," +
+			SPACE_NAME + " TEXT NOT NULL," +
+			SPACE_DOMAIN + " TEXT NOT NULL, " +
+			SPACE_TYPE + " TEXT NOT NULL, " +
+			SPACE_PERSISTENTTYPE + " TEXT NOT NULL, " +
+			SPACE_PERSISTENTDURATION + " TEXT, " +
+			USER + " TEXT NOT NULL, " +
+			"PRIMARY KEY (" + SPACE_ID + ", " + USER + "));";
+	public static final String SQL_CREATE_USER_INDEX = "CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_user_index ON " + TABLE_NAME + " (" + USER + ");";
+
+	private static final String COLUMNS_4 = SPACE_ID + ", " + SPACE_NAME + ", " + SPACE_DOMAIN + ", " + SPACE_TYPE + ", " +
+			SPACE_PERSISTENTTYPE + ", " + SPACE_PERSISTENTDURATION + ", " + USER;
+	public static final String[] SQL_UPGRADE_5 = {
+			"ALTER TABLE " + TABLE_NAME + " RENAME TO " + TABLE_NAME + "_old;",
+			SQL_CREATE,
+			"INSERT OR IGNORE INTO " + TABLE_NAME + " (" + COLUMNS_4 + ") SELECT " + COLUMNS_4 + " FROM " + TABLE_NAME + "_old ORDER BY rowid;",
+			"DROP TABLE " + TABLE_NAME + "_old;",
+			SQL_CREATE_USER_INDEX
+	};
 
 	public static final String SQL_DROP = "DROP TABLE IF EXISTS " + TABLE_NAME + ";";
 }
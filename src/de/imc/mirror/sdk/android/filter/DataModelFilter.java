@@ -4,6 +4,8 @@ import org.jdom2.Element;
 
 import de.imc.mirror.sdk.CDMData;
 import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.cdm.CDMData_1_0;
+import de.imc.mirror.sdk.cdm.CDMData_2_0;
 
 /**
  * Filter for data model information.
@@ -47,22 +49,27 @@ public class DataModelFilter implements de.imc.mirror.sdk.filter.DataModelFilter
 			return false;
 		}
 		if (version != null) {
-			CDMData cdmData = dataObject.getCDMData();
-			if (cdmData == null) {
-				return false;
-			}
-			try {
-				String modelVersion = (String) cdmData.getClass().getMethod("modelVersion").invoke(cdmData);
-				return version.equals(modelVersion);
-			} catch (Exception e) {
-				// CDM < 1.0
-				return false;
-			}
+			return version.equals(getModelVersion(dataObject.getCDMData()));
 		} else {
 			return true;
 		}
 	}
 
+	/**
+	 * Returns the model version from the CDM information of a data object.
+	 * @param cdmData CDM information. May be <code>null</code>.
+	 * @return Model version or <code>null</code> if no CDM information is available or the CDM version is lower than 1.0.
+	 */
+	static String getModelVersion(CDMData cdmData) {
+		if (cdmData instanceof CDMData_2_0) {
+			return ((CDMData_2_0) cdmData).getModelVersion();
+		} else if (cdmData instanceof CDMData_1_0) {
+			return ((CDMData_1_0) cdmData).getModelVersion();
+		} else {
+			return null;
+		}
+	}
+
 	@Override
 	public String getNamespace() {
 		return namespace;
@@ -0,0 +1,359 @@
+package de.imc.mirror.sdk.android.filter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.DataObjectFilter;
+import de.imc.mirror.sdk.android.utils.DatatypeConverter;
+
+/**
+ * Compiles data object filters into predicates optimized for evaluating many data objects.
+ * Regular expressions are compiled once, AND and OR filters evaluate the cheapest child filters first,
+ * and fields used by multiple filters are extracted only once per data object.
+ * The compiled predicate reflects the filter at the time of compilation. Later changes to AND or OR filters are not applied.
+ * Filters not known to the compiler are evaluated by calling them directly.
+ */
+public final class FilterCompiler {
+
+	private FilterCompiler() {}
+
+	/**
+	 * Compiles a filter.
+	 * @param filter Filter to compile.
+	 * @return Compiled filter which validates the same data objects as the given one.
+	 */
+	public static DataObjectFilter compile(DataObjectFilter filter) {
+		return new CompiledFilter(compilePredicate(filter));
+	}
+
+	/**
+	 * Compiles a set of filters which all have to validate a data object.
+	 * @param filters Filters to compile. May be empty.
+	 * @return Compiled filter which validates a data object if all given filters validate it.
+	 */
+	public static DataObjectFilter compileAll(Collection<? extends DataObjectFilter> filters) {
+		List<Predicate> predicates = new ArrayList<Predicate>(filters.size());
+		for (DataObjectFilter filter : filters) {
+			predicates.add(compilePredicate(filter));
+		}
+		return new CompiledFilter(new AndPredicate(predicates));
+	}
+
+	private static Predicate compilePredicate(DataObjectFilter filter) {
+		if (filter instanceof de.imc.mirror.sdk.filter.AndFilter) {
+			List<Predicate> predicates = new ArrayList<Predicate>();
+			for (DataObjectFilter childFilter : ((de.imc.mirror.sdk.filter.AndFilter) filter).getFilters()) {
+				predicates.add(compilePredicate(childFilter));
+			}
+			return new AndPredicate(predicates);
+		} else if (filter instanceof de.imc.mirror.sdk.filter.OrFilter) {
+			List<Predicate> predicates = new ArrayList<Predicate>();
+			for (DataObjectFilter childFilter : ((de.imc.mirror.sdk.filter.OrFilter) filter).getFilters()) {
+				predicates.add(compilePredicate(childFilter));
+			}
+			return new OrPredicate(predicates);
+		} else if (filter instanceof de.imc.mirror.sdk.filter.NamespaceFilter) {
+			de.imc.mirror.sdk.filter.NamespaceFilter namespaceFilter = (de.imc.mirror.sdk.filter.NamespaceFilter) filter;
+			return new NamespacePredicate(namespaceFilter.getCompareType(), namespaceFilter.getCompareString());
+		} else if (filter instanceof de.imc.mirror.sdk.filter.PublisherFilter) {
+			return new PublisherPredicate(((de.imc.mirror.sdk.filter.PublisherFilter) filter).getPublisher());
+		} else if (filter instanceof de.imc.mirror.sdk.filter.ReferencesFilter) {
+			return new ReferencesPredicate(((de.imc.mirror.sdk.filter.ReferencesFilter) filter).getReferenceId());
+		} else if (filter instanceof de.imc.mirror.sdk.filter.DataModelFilter) {
+			de.imc.mirror.sdk.filter.DataModelFilter dataModelFilter = (de.imc.mirror.sdk.filter.DataModelFilter) filter;
+			return new DataModelPredicate(dataModelFilter.getNamespace(), dataModelFilter.getVersion());
+		} else if (filter instanceof de.imc.mirror.sdk.filter.PeriodFilter) {
+			de.imc.mirror.sdk.filter.PeriodFilter periodFilter = (de.imc.mirror.sdk.filter.PeriodFilter) filter;
+			return new PeriodPredicate(periodFilter.getFrom(), periodFilter.getTo());
+		} else {
+			return new FilterPredicate(filter);
+		}
+	}
+
+	/**
+	 * Fields of a data object extracted on first access and shared by all predicates.
+	 */
+	private static class Fields {
+		final DataObject dataObject;
+		private String namespace;
+		private Date timestamp;
+		private boolean isTimestampResolved = false;
+
+		Fields(DataObject dataObject) {
+			this.dataObject = dataObject;
+		}
+
+		String getNamespace() {
+			if (namespace == null) {
+				namespace = dataObject.getNamespaceURI();
+			}
+			return namespace;
+		}
+
+		String getAttribute(String name) {
+			return dataObject.getElement().getAttributeValue(name);
+		}
+
+		Date getTimestamp() {
+			if (!isTimestampResolved) {
+				if (dataObject instanceof de.imc.mirror.sdk.android.DataObject) {
+					timestamp = ((de.imc.mirror.sdk.android.DataObject) dataObject).getTimestamp();
+				} else {
+					String timestampValue = getAttribute("timestamp");
+					try {
+						timestamp = timestampValue != null ? DatatypeConverter.parseDateTime(timestampValue).getTime() : null;
+					} catch (IllegalArgumentException e) {
+						// Failed to parse timestamp
+						timestamp = null;
+					}
+				}
+				isTimestampResolved = true;
+			}
+			return timestamp;
+		}
+	}
+
+	/**
+	 * Compiled filter condition.
+	 */
+	private static abstract class Predicate {
+		/**
+		 * Evaluates the condition.
+		 * @param fields Fields of the data object to evaluate.
+		 * @return <code>true</code> if the data object fulfills the condition, otherwise <code>false</code>.
+		 */
+		abstract boolean test(Fields fields);
+
+		/**
+		 * Returns the estimated relative cost of an evaluation.
+		 * @return Cost estimate.
+		 */
+		abstract int getCost();
+	}
+
+	private static final Comparator<Predicate> COST_COMPARATOR = new Comparator<Predicate>() {
+		@Override
+		public int compare(Predicate p1, Predicate p2) {
+			return p1.getCost() < p2.getCost() ? -1 : (p1.getCost() == p2.getCost() ? 0 : 1);
+		}
+	};
+
+	private static class AndPredicate extends Predicate {
+		private final Predicate[] predicates;
+		private final int cost;
+
+		AndPredicate(List<Predicate> predicates) {
+			Collections.sort(predicates, COST_COMPARATOR);
+			this.predicates = predicates.toArray(new Predicate[predicates.size()]);
+			int cost = 0;
+			for (Predicate predicate : predicates) {
+				cost += predicate.getCost();
+			}
+			this.cost = cost;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			for (Predicate predicate : predicates) {
+				if (!predicate.test(fields)) return false;
+			}
+			return true;
+		}
+
+		@Override
+		int getCost() {
+			return cost;
+		}
+	}
+
+	private static class OrPredicate extends Predicate {
+		private final Predicate[] predicates;
+		private final int cost;
+
+		OrPredicate(List<Predicate> predicates) {
+			Collections.sort(predicates, COST_COMPARATOR);
+			this.predicates = predicates.toArray(new Predicate[predicates.size()]);
+			int cost = 0;
+			for (Predicate predicate : predicates) {
+				cost += predicate.getCost();
+			}
+			this.cost = cost;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			for (Predicate predicate : predicates) {
+				if (predicate.test(fields)) return true;
+			}
+			return false;
+		}
+
+		@Override
+		int getCost() {
+			return cost;
+		}
+	}
+
+	private static class NamespacePredicate extends Predicate {
+		private final de.imc.mirror.sdk.filter.NamespaceFilter.CompareType compareType;
+		private final String compareString;
+		private final Pattern pattern;
+
+		NamespacePredicate(de.imc.mirror.sdk.filter.NamespaceFilter.CompareType compareType, String compareString) {
+			this.compareType = compareType;
+			this.compareString = compareString;
+			this.pattern = compareType == de.imc.mirror.sdk.filter.NamespaceFilter.CompareType.REGEX ? Pattern.compile(compareString) : null;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			switch (compareType) {
+			case STRICT:
+				return fields.getNamespace().equals(compareString);
+			case CONTAINS:
+				return fields.getNamespace().contains(compareString);
+			case REGEX:
+				return pattern.matcher(fields.getNamespace()).matches();
+			default:
+				return true;
+			}
+		}
+
+		@Override
+		int getCost() {
+			return compareType == de.imc.mirror.sdk.filter.NamespaceFilter.CompareType.REGEX ? 10 : 1;
+		}
+	}
+
+	private static class PublisherPredicate extends Predicate {
+		private final String publisher;
+
+		PublisherPredicate(String publisher) {
+			this.publisher = publisher;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			String objectPublisher = fields.getAttribute("publisher");
+			return objectPublisher != null && objectPublisher.startsWith(publisher);
+		}
+
+		@Override
+		int getCost() {
+			return 2;
+		}
+	}
+
+	private static class ReferencesPredicate extends Predicate {
+		private final String referenceId;
+
+		ReferencesPredicate(String referenceId) {
+			this.referenceId = referenceId;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			return referenceId.equals(fields.getAttribute("ref"));
+		}
+
+		@Override
+		int getCost() {
+			return 2;
+		}
+	}
+
+	private static class DataModelPredicate extends Predicate {
+		private final String namespace;
+		private final String version;
+
+		DataModelPredicate(String namespace, String version) {
+			this.namespace = namespace;
+			this.version = version;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			if (!namespace.equals(fields.getNamespace())) {
+				return false;
+			}
+			if (version == null) {
+				return true;
+			}
+			return version.equals(DataModelFilter.getModelVersion(fields.dataObject.getCDMData()));
+		}
+
+		@Override
+		int getCost() {
+			return version == null ? 1 : 20;
+		}
+	}
+
+	private static class PeriodPredicate extends Predicate {
+		private final Date from, to;
+
+		PeriodPredicate(Date from, Date to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			Date objectTimestamp = fields.getTimestamp();
+			if (objectTimestamp == null) {
+				return false;
+			}
+			if (from != null && objectTimestamp.before(from)) {
+				return false;
+			}
+			if (to != null && objectTimestamp.after(to)) {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		int getCost() {
+			return 5;
+		}
+	}
+
+	private static class FilterPredicate extends Predicate {
+		private final DataObjectFilter filter;
+
+		FilterPredicate(DataObjectFilter filter) {
+			this.filter = filter;
+		}
+
+		@Override
+		boolean test(Fields fields) {
+			return filter.isDataObjectValid(fields.dataObject);
+		}
+
+		@Override
+		int getCost() {
+			return 100;
+		}
+	}
+
+	/**
+	 * Filter evaluating a compiled predicate.
+	 */
+	private static class CompiledFilter implements DataObjectFilter {
+		private final Predicate predicate;
+
+		CompiledFilter(Predicate predicate) {
+			this.predicate = predicate;
+		}
+
+		@Override
+		public boolean isDataObjectValid(DataObject dataObject) {
+			return predicate.test(new Fields(dataObject));
+		}
+	}
+}
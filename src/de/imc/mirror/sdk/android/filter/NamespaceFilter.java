@@ -1,5 +1,7 @@
 package de.imc.mirror.sdk.android.filter;
 
+import java.util.regex.Pattern;
+
 import org.jdom2.Element;
 
 import de.imc.mirror.sdk.DataObject;
@@ -12,6 +14,7 @@ import de.imc.mirror.sdk.DataObject;
 public class NamespaceFilter implements de.imc.mirror.sdk.filter.NamespaceFilter {
 	private final String compareString;
 	private final CompareType compareType;
+	private final Pattern pattern;
 	
 	/**
 	 * Creates a strict namespace filter with the given namespace.
@@ -29,6 +32,7 @@ public class NamespaceFilter implements de.imc.mirror.sdk.filter.NamespaceFilter
 	public NamespaceFilter(CompareType compareType, String compareString) {
 		this.compareType = compareType;
 		this.compareString = compareString;
+		this.pattern = compareType == CompareType.REGEX ? Pattern.compile(compareString) : null;
 	}
 	
 	@Override
@@ -54,7 +58,7 @@ public class NamespaceFilter implements de.imc.mirror.sdk.filter.NamespaceFilter
 			}
 			break;
 		case REGEX:
-			if (!objectNamespace.matches(compareString)) {
+			if (!pattern.matcher(objectNamespace).matches()) {
 				return false;
 			}
 			break;
@@ -51,7 +51,7 @@ public class ReferencesFilter implements de.imc.mirror.sdk.filter.ReferencesFilt
 
 	@Override
 	public boolean equals(Object obj) {
-		if (obj == null || !(obj instanceof DataModelFilter)) return false;
+		if (obj == null || !(obj instanceof ReferencesFilter)) return false;
 		
 		ReferencesFilter that = (ReferencesFilter) obj;
 		if (!this.referenceId.equals(that.referenceId)) return false;
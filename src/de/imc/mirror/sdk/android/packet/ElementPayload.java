@@ -0,0 +1,41 @@
+package de.imc.mirror.sdk.android.packet;
+
+import org.jdom2.Element;
+import org.jdom2.output.XMLOutputter;
+import org.jivesoftware.smackx.pubsub.SimplePayload;
+
+/**
+ * Payload of a pubsub item which was parsed directly into a JDOM element.
+ * The XML string is only created when requested.
+ */
+public class ElementPayload extends SimplePayload {
+	private final Element element;
+	private volatile String xmlString;
+	
+	/**
+	 * Creates a payload for the given element.
+	 * @param element Root element of the payload. Must not be modified afterwards.
+	 */
+	public ElementPayload(Element element) {
+		super(element.getName(), element.getNamespaceURI(), null);
+		this.element = element;
+	}
+	
+	/**
+	 * Returns the root element of the payload.
+	 * @return JDOM element. Must not be modified.
+	 */
+	public Element getElement() {
+		return element;
+	}
+	
+	@Override
+	public String toXML() {
+		String xml = xmlString;
+		if (xml == null) {
+			xml = new XMLOutputter().outputString(element);
+			xmlString = xml;
+		}
+		return xml;
+	}
+}
@@ -0,0 +1,45 @@
+package de.imc.mirror.sdk.android.packet;
+
+import org.jivesoftware.smack.packet.PacketExtension;
+import org.jivesoftware.smack.provider.PacketExtensionProvider;
+import org.jivesoftware.smack.provider.ProviderManager;
+import org.jivesoftware.smack.util.PacketParserUtils;
+import org.jivesoftware.smackx.pubsub.Item;
+import org.jivesoftware.smackx.pubsub.PayloadItem;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Provider for pubsub items.
+ * Other than the smack item provider, the payload is not collected as string but parsed directly into a JDOM element.
+ * Items without payload are returned as {@link Item}, payloads with a registered extension provider are parsed by this provider.
+ * Other payloads are returned as {@link ElementPayload}.
+ */
+public class PayloadItemProvider implements PacketExtensionProvider {
+	@Override
+	public PacketExtension parseExtension(XmlPullParser parser) throws Exception {
+		String id = parser.getAttributeValue(null, "id");
+		String node = parser.getAttributeValue(null, "node");
+		int itemDepth = parser.getDepth();
+		
+		int event = parser.next();
+		while (event != XmlPullParser.START_TAG) {
+			if (event == XmlPullParser.END_TAG) {
+				return new Item(id, node);
+			}
+			event = parser.next();
+		}
+		
+		String payloadElementName = parser.getName();
+		String payloadNamespace = parser.getNamespace();
+		if (ProviderManager.getInstance().getExtensionProvider(payloadElementName, payloadNamespace) != null) {
+			return new PayloadItem<PacketExtension>(id, node, PacketParserUtils.parsePacketExtension(payloadElementName, payloadNamespace, parser));
+		}
+		
+		ElementPayload payload = new ElementPayload(XmlElementParser.parseElement(parser));
+		// skip to the end tag of the item
+		do {
+			event = parser.next();
+		} while (event != XmlPullParser.END_TAG || parser.getDepth() > itemDepth);
+		return new PayloadItem<ElementPayload>(id, node, payload);
+	}
+}
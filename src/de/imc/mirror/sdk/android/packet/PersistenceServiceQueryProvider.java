@@ -17,7 +17,7 @@ public class PersistenceServiceQueryProvider implements IQProvider {
 			int event = parser.next();
 			switch (event) {
 			case XmlPullParser.START_TAG:
-				childElement.addContent(parseArbitraryElement(parser));
+				childElement.addContent(XmlElementParser.parseElement(parser));
 				break;
 			case XmlPullParser.END_TAG:
 				if ("query".equals(parser.getName())) {
@@ -29,32 +29,5 @@ public class PersistenceServiceQueryProvider implements IQProvider {
 		IQ iq = new QueryResponseIQ(childElement);
 		return iq;
 	}
-	
-	private Element parseArbitraryElement(XmlPullParser parser) throws Exception {
-		String elementName = parser.getName();
-		String namespace = parser.getNamespace();
-		Element element = new Element(elementName, namespace);
-		for (int i = 0; i < parser.getAttributeCount(); i++) {
-			element.setAttribute(parser.getAttributeName(i), parser.getAttributeValue(i));
-		}
-		
-		boolean done = false;
-		while (!done) {
-			int event = parser.next();
-			switch (event) {
-			case XmlPullParser.START_TAG:
-				element.addContent(parseArbitraryElement(parser));
-				break;
-			case XmlPullParser.TEXT:
-				element.setText(parser.getText());
-				break;
-			case XmlPullParser.END_TAG:
-				if (parser.getName().equals(elementName)) {
-					done = true;
-				}
-			}
-		}
-		return element;
-	}
 
 }
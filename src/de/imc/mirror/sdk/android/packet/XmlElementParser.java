@@ -0,0 +1,65 @@
+package de.imc.mirror.sdk.android.packet;
+
+import org.jdom2.Element;
+import org.jdom2.Namespace;
+import org.jdom2.Text;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * Utility to build JDOM elements directly from a namespace aware pull parser.
+ */
+public class XmlElementParser {
+	
+	private XmlElementParser() {}
+	
+	/**
+	 * Parses the element the parser is currently positioned at, including all attributes, namespace declarations, and children.
+	 * When the method returns, the parser is positioned at the end tag of the element.
+	 * @param parser Pull parser positioned at the start tag of the element.
+	 * @return JDOM element without parent.
+	 * @throws Exception Failed to read from the parser.
+	 */
+	public static Element parseElement(XmlPullParser parser) throws Exception {
+		Namespace namespace = getNamespace(parser.getPrefix(), parser.getNamespace());
+		Element element = new Element(parser.getName(), namespace);
+		int depth = parser.getDepth();
+		for (int i = parser.getNamespaceCount(depth - 1); i < parser.getNamespaceCount(depth); i++) {
+			String prefix = parser.getNamespacePrefix(i);
+			if (prefix != null && !prefix.equals(namespace.getPrefix())) {
+				element.addNamespaceDeclaration(Namespace.getNamespace(prefix, parser.getNamespaceUri(i)));
+			}
+		}
+		for (int i = 0; i < parser.getAttributeCount(); i++) {
+			String attributeNamespace = parser.getAttributeNamespace(i);
+			if (attributeNamespace == null || attributeNamespace.length() == 0) {
+				element.setAttribute(parser.getAttributeName(i), parser.getAttributeValue(i));
+			} else {
+				element.setAttribute(parser.getAttributeName(i), parser.getAttributeValue(i), getNamespace(parser.getAttributePrefix(i), attributeNamespace));
+			}
+		}
+		
+		boolean done = false;
+		while (!done) {
+			switch (parser.next()) {
+			case XmlPullParser.START_TAG:
+				element.addContent(parseElement(parser));
+				break;
+			case XmlPullParser.TEXT:
+				element.addContent(new Text(parser.getText()));
+				break;
+			case XmlPullParser.END_TAG:
+				// nested end tags are consumed by the recursive calls
+				done = true;
+				break;
+			}
+		}
+		return element;
+	}
+	
+	private static Namespace getNamespace(String prefix, String uri) {
+		if (uri == null || uri.length() == 0) {
+			return Namespace.NO_NAMESPACE;
+		}
+		return Namespace.getNamespace(prefix != null ? prefix : "", uri);
+	}
+}
@@ -0,0 +1,29 @@
+package de.imc.mirror.sdk.android.utils;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory for the background workers of the handlers.
+ * The threads are named after the given prefix and do not keep the application alive.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+	private final String namePrefix;
+	private final AtomicInteger threadCount;
+	
+	/**
+	 * Creates a new thread factory.
+	 * @param namePrefix Prefix for the names of the created threads, e.g. "DataHandler".
+	 */
+	public DaemonThreadFactory(String namePrefix) {
+		this.namePrefix = namePrefix;
+		this.threadCount = new AtomicInteger(0);
+	}
+
+	@Override
+	public Thread newThread(Runnable runnable) {
+		Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
@@ -0,0 +1,191 @@
+package de.imc.mirror.sdk.android;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.LogManager;
+
+import org.jdom2.Element;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.XMLOutputter;
+
+import de.imc.mirror.sdk.CDMData;
+import de.imc.mirror.sdk.cdm.CDMVersion;
+import de.imc.mirror.sdk.android.cdm.CDMData_0_1;
+import de.imc.mirror.sdk.android.cdm.CDMData_0_2;
+import de.imc.mirror.sdk.android.cdm.CDMData_1_0;
+import de.imc.mirror.sdk.android.cdm.CDMData_2_0;
+
+/**
+ * Checks that the CDM information of data objects is resolved in the same way as by the detection which verified the CDM versions
+ * one after another, and compares the detection times.
+ * The corpus contains payloads of CDM 0.1, 0.2, 1.0, and 2.0 as well as all combinations of valid, blank, and missing
+ * id, timestamp, model version, and CDM version attributes.
+ * The check is not part of the library. It requires the classes of the library and an Android class path, e.g.,
+ * <code>java -cp build:build-test:libs/*:android.jar de.imc.mirror.sdk.android.CDMDetectionCheck</code>.
+ * The process terminates with exit code 1 if the results differ.
+ */
+public class CDMDetectionCheck {
+	private static final String NAMESPACE = "mirror:application:moodmap:mood";
+	private static final int TIMING_ROUNDS = 200;
+
+	private static final String[] PAYLOADS = {
+		"<mood xmlns=\"" + NAMESPACE + "\" id=\"a1\" timestamp=\"2013-05-01T10:00:00Z\" cdmVersion=\"0.1\"><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\" id=\"a2\" timestamp=\"2013-05-01T10:00:00Z\" cdmVersion=\"0.2\" publisher=\"alice@mirror-demo.eu\"><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\" id=\"a3\" timestamp=\"2013-05-01T10:00:00Z\" cdmVersion=\"1.0\" modelVersion=\"1.0\" customId=\"c1\"><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\" id=\"a4\" timestamp=\"2013-05-01T10:00:00Z\" cdmVersion=\"2.0\" modelVersion=\"1.0\" updates=\"a3\">" +
+				"<creationInfo><date>2013-05-01T10:00:00Z</date><person>alice@mirror-demo.eu</person></creationInfo><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\" id=\"a5\" timestamp=\"2013-05-01T10:00:00Z\" modelVersion=\"1.0\"><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\" id=\"a6\" timestamp=\"2013-05-01T10:00:00Z\"><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" xmlns:cdm=\"urn:example:cdm\" " +
+				"cdm:id=\"a7\" cdm:modelVersion=\"1.0\" timestamp=\"2013-05-01T10:00:00Z\" xsi:schemaLocation=\"" + NAMESPACE + " mood.xsd\"><value>1</value></mood>",
+		"<mood xmlns=\"" + NAMESPACE + "\"><value>1</value></mood>"
+	};
+	private static final String[] IDS = { "a1", "", " ", null };
+	private static final String[] TIMESTAMPS = { "2013-05-01T10:00:00Z", "yesterday", "", " ", null };
+	private static final String[] MODEL_VERSIONS = { "1.0", "", " ", null };
+	private static final String[] CDM_VERSIONS = { "0.1", "0.2", "1.0", "2.0", "", "3.0", null };
+
+	public static void main(String[] args) throws Exception {
+		// the corpus contains invalid timestamps on purpose
+		LogManager.getLogManager().reset();
+		List<Element> corpus = createCorpus();
+		System.out.println(corpus.size() + " data objects.");
+		int mismatches = 0;
+		for (Element element : corpus) {
+			String expected = describe(element, true);
+			String actual = describe(element, false);
+			if (!expected.equals(actual)) {
+				mismatches++;
+				System.out.println("Mismatch: expected " + expected + ", detected " + actual + ", object: " + new XMLOutputter().outputString(element));
+			}
+		}
+		System.out.println("Mismatches: " + mismatches);
+		compareTimings(corpus);
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	private static List<Element> createCorpus() throws Exception {
+		List<Element> corpus = new ArrayList<Element>();
+		SAXBuilder saxBuilder = new SAXBuilder();
+		for (String payload : PAYLOADS) {
+			corpus.add(saxBuilder.build(new StringReader(payload)).detachRootElement());
+		}
+		for (String id : IDS) {
+			for (String timestamp : TIMESTAMPS) {
+				for (String modelVersion : MODEL_VERSIONS) {
+					for (String cdmVersion : CDM_VERSIONS) {
+						Element element = new Element("mood", NAMESPACE);
+						setAttribute(element, "id", id);
+						setAttribute(element, "timestamp", timestamp);
+						setAttribute(element, "modelVersion", modelVersion);
+						setAttribute(element, "cdmVersion", cdmVersion);
+						corpus.add(element);
+					}
+				}
+			}
+		}
+		return corpus;
+	}
+
+	private static void setAttribute(Element element, String name, String value) {
+		if (value != null) {
+			element.setAttribute(name, value);
+		}
+	}
+
+	private static DataObject createDataObject(Element element) {
+		return new DataObjectBuilder(element.clone(), element.getNamespaceURI()).build();
+	}
+
+	/**
+	 * Resolves the CDM information of a data object and describes the result.
+	 * @param element Root element of the data object.
+	 * @param useVerification If <code>true</code>, the CDM version is detected by verifying the versions one after another.
+	 * @return Description of the CDM information, the exception thrown, or "none".
+	 */
+	private static String describe(Element element, boolean useVerification) {
+		CDMData cdmData;
+		try {
+			cdmData = useVerification ? resolveByVerification(element.clone()) : createDataObject(element).getCDMData();
+		} catch (RuntimeException e) {
+			return e.getClass().getSimpleName();
+		}
+		if (cdmData == null) {
+			return "none";
+		}
+		return cdmData.getClass().getSimpleName() + "[" + cdmData.getCDMVersion() + ", " + cdmData.getId() + ", " + cdmData.getTimeStamp() + "]";
+	}
+
+	/**
+	 * Resolves the CDM information as the data object did before the attributes were read in a single pass.
+	 */
+	private static CDMData resolveByVerification(Element element) {
+		String cdmVersion = element.getAttributeValue("cdmVersion");
+		if (cdmVersion != null) {
+			switch (CDMVersion.getVersionForString(cdmVersion)) {
+			case CDM_0_1:
+				return CDMData_0_1.verify(element).isEmpty() ? new CDMData_0_1(element) : null;
+			case CDM_0_2:
+				return CDMData_0_2.verify(element).isEmpty() ? new CDMData_0_2(element) : null;
+			case CDM_1_0:
+				return CDMData_1_0.verify(element).isEmpty() ? new CDMData_1_0(element) : null;
+			case CDM_2_0:
+				return CDMData_2_0.verify(element).isEmpty() ? new CDMData_2_0(element) : null;
+			default:
+				return null;
+			}
+		} else if (CDMData_2_0.verify(element).size() == 0) {
+			return new CDMData_2_0(element);
+		} else if (CDMData_1_0.verify(element).size() == 0) {
+			return new CDMData_1_0(element);
+		} else if (CDMData_0_2.verify(element).size() == 0) {
+			return new CDMData_0_2(element);
+		} else if (CDMData_0_1.verify(element).size() == 0) {
+			return new CDMData_0_1(element);
+		} else {
+			return null;
+		}
+	}
+
+	private static void compareTimings(List<Element> corpus) {
+		List<Element> detectable = new ArrayList<Element>();
+		for (Element element : corpus) {
+			if (element.getAttribute("cdmVersion") == null) {
+				detectable.add(element);
+			}
+		}
+		// warm up
+		detect(detectable, true, TIMING_ROUNDS);
+		detect(detectable, false, TIMING_ROUNDS);
+
+		long start = System.nanoTime();
+		int verifiedCount = detect(detectable, true, TIMING_ROUNDS);
+		long verificationTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		int detectedCount = detect(detectable, false, TIMING_ROUNDS);
+		long detectionTime = System.nanoTime() - start;
+
+		long detections = (long) TIMING_ROUNDS * detectable.size();
+		System.out.println("Detections without CDM version attribute: " + detections + " (" + verifiedCount + "/" + detectedCount + " with CDM information)");
+		System.out.println("Verification cascade: " + (verificationTime / 1000000) + " ms, " + (verificationTime / detections) + " ns per object");
+		System.out.println("Single pass:          " + (detectionTime / 1000000) + " ms, " + (detectionTime / detections) + " ns per object");
+	}
+
+	private static int detect(List<Element> elements, boolean useVerification, int rounds) {
+		int count = 0;
+		for (int round = 0; round < rounds; round++) {
+			for (Element element : elements) {
+				// both variants create a data object, so that only the detection differs
+				DataObject dataObject = createDataObject(element);
+				CDMData cdmData = useVerification ? resolveByVerification(dataObject.getElement()) : dataObject.getCDMData();
+				if (cdmData != null) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,155 @@
+package de.imc.mirror.sdk.android;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jdom2.Element;
+
+import android.content.Context;
+import android.util.Log;
+import de.imc.mirror.sdk.android.data.DataTable;
+
+/**
+ * Measures how much cache reads of the data wrapper are slowed down by concurrent batch writes.
+ * Reader threads query the data objects of a node, first without and then with a writer thread storing batches of data objects
+ * like the cache writer. The latencies of both phases and the write throughput are reported.
+ * The check is not part of the library. It has to run on a device or emulator, e.g., from an instrumentation test:
+ * <code>DataWrapperContentionCheck.run(getContext())</code>. No handler should be active while the check runs, as the data wrapper is
+ * shared within the process. The data objects stored by the check are deleted afterwards.
+ */
+public class DataWrapperContentionCheck {
+	private static final String DB_NAME = "contention-check.db";
+	private static final String NAMESPACE = "mirror:application:check:item";
+	private static final int SEED_SIZE = 500;
+	private static final int BATCH_SIZE = 50;
+	private static final int READER_COUNT = 2;
+	private static final int READS_PER_READER = 50;
+
+	private final DataWrapper datawrapper;
+	private final String nodeId;
+	private int itemCount = 0;
+
+	private DataWrapperContentionCheck(DataWrapper datawrapper, String nodeId) {
+		this.datawrapper = datawrapper;
+		this.nodeId = nodeId;
+	}
+
+	/**
+	 * Runs the check.
+	 * @param context Context to open the database with, if no data wrapper exists yet.
+	 * @return Report of the measured latencies. The report is also logged.
+	 * @throws InterruptedException The thread was interrupted while waiting for the reader or writer threads.
+	 */
+	public static String run(Context context) throws InterruptedException {
+		DataWrapper datawrapper = DataWrapper.getInstance(context, DB_NAME);
+		DataWrapperContentionCheck check = new DataWrapperContentionCheck(datawrapper, "contention-check-" + System.currentTimeMillis());
+		try {
+			check.writeBatch(SEED_SIZE);
+			List<Long> idleReads = check.measureReads(false);
+			List<Long> writeLatencies = Collections.synchronizedList(new ArrayList<Long>());
+			List<Long> contendedReads = check.measureReads(true, writeLatencies);
+			StringBuilder report = new StringBuilder();
+			report.append("Reads without writer: ").append(describe(idleReads)).append("\n");
+			report.append("Reads with writer:    ").append(describe(contendedReads)).append("\n");
+			report.append("Batch writes of ").append(BATCH_SIZE).append(" data objects: ").append(describe(writeLatencies));
+			Log.i("DataWrapperContentionCheck", report.toString());
+			return report.toString();
+		} finally {
+			datawrapper.deleteCachedDataObjectsForSpace(check.nodeId);
+		}
+	}
+
+	private List<Long> measureReads(boolean withWriter) throws InterruptedException {
+		return measureReads(withWriter, new ArrayList<Long>());
+	}
+
+	/**
+	 * Runs the reader threads and, optionally, the writer thread until all reads are done.
+	 * @param withWriter <code>true</code> to write batches while reading, otherwise <code>false</code>.
+	 * @param writeLatencies List to add the latencies of the batch writes to, in milliseconds.
+	 * @return Latencies of the reads in milliseconds.
+	 * @throws InterruptedException The thread was interrupted while waiting for the threads.
+	 */
+	private List<Long> measureReads(boolean withWriter, final List<Long> writeLatencies) throws InterruptedException {
+		final List<Long> readLatencies = Collections.synchronizedList(new ArrayList<Long>());
+		final CountDownLatch readersDone = new CountDownLatch(READER_COUNT);
+		final AtomicBoolean isReading = new AtomicBoolean(true);
+		Thread writer = null;
+		if (withWriter) {
+			writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					while (isReading.get()) {
+						long start = System.nanoTime();
+						writeBatch(BATCH_SIZE);
+						writeLatencies.add((System.nanoTime() - start) / 1000000);
+					}
+				}
+			}, "ContentionCheckWriter");
+			writer.start();
+		}
+		for (int i = 0; i < READER_COUNT; i++) {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int j = 0; j < READS_PER_READER; j++) {
+							long start = System.nanoTime();
+							datawrapper.queryCachedDataObjects(DataTable.DATA_NODE + "=?", new String[] {nodeId});
+							readLatencies.add((System.nanoTime() - start) / 1000000);
+						}
+					} finally {
+						readersDone.countDown();
+					}
+				}
+			}, "ContentionCheckReader" + i).start();
+		}
+		readersDone.await();
+		isReading.set(false);
+		if (writer != null) {
+			writer.join();
+		}
+		return readLatencies;
+	}
+
+	/**
+	 * Stores a batch of new data objects for the node of the check.
+	 * @param size Number of data objects to store.
+	 */
+	private void writeBatch(int size) {
+		List<DataObjectCacheWriter.Entry> entries = new ArrayList<DataObjectCacheWriter.Entry>(size);
+		synchronized (this) {
+			for (int i = 0; i < size; i++) {
+				String id = nodeId + "-" + itemCount++;
+				Element element = new Element("item", NAMESPACE);
+				element.setAttribute("id", id);
+				element.setAttribute("timestamp", "2013-05-01T10:00:00Z");
+				element.setAttribute("modelVersion", "1.0");
+				element.setText("Data object used to measure the contention of the data wrapper.");
+				entries.add(new DataObjectCacheWriter.Entry(nodeId, id, new DataObjectBuilder(element, NAMESPACE).build()));
+			}
+		}
+		datawrapper.saveDataObjects(entries);
+	}
+
+	/**
+	 * Describes a list of latencies by its count, median, 95th percentile and maximum.
+	 * @param latencies Latencies in milliseconds.
+	 * @return Description string.
+	 */
+	private static String describe(List<Long> latencies) {
+		List<Long> sorted;
+		synchronized (latencies) {
+			sorted = new ArrayList<Long>(latencies);
+		}
+		if (sorted.isEmpty()) {
+			return "no samples";
+		}
+		Collections.sort(sorted);
+		return sorted.size() + " samples, median " + sorted.get(sorted.size() / 2) + " ms, p95 " +
+				sorted.get((int) (sorted.size() * 0.95)) + " ms, max " + sorted.get(sorted.size() - 1) + " ms";
+	}
+}
@@ -0,0 +1,254 @@
+package de.imc.mirror.sdk.android.filter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.LogManager;
+
+import org.jdom2.Element;
+import org.jdom2.output.XMLOutputter;
+
+import de.imc.mirror.sdk.DataObject;
+import de.imc.mirror.sdk.DataObjectFilter;
+import de.imc.mirror.sdk.SerializableDataObjectFilter;
+import de.imc.mirror.sdk.android.DataObjectBuilder;
+import de.imc.mirror.sdk.android.utils.DatatypeConverter;
+import de.imc.mirror.sdk.filter.NamespaceFilter.CompareType;
+
+/**
+ * Checks that the filters compiled by {@link FilterCompiler} validate the same data objects as the interpreted filters
+ * and compares the evaluation times.
+ * A corpus of data objects and a set of filters are generated, including regular expressions, timestamps at the boundaries
+ * of a period, and objects with and without model and CDM version.
+ * The check is not part of the library. It requires the classes of the library and an Android class path, e.g.,
+ * <code>java -cp build:build-test:libs/*:android.jar de.imc.mirror.sdk.android.filter.FilterCompilerCheck [seed]</code>.
+ * The process terminates with exit code 1 if a compiled filter returns a different result.
+ */
+public class FilterCompilerCheck {
+	private static final int CORPUS_SIZE = 1000;
+	private static final int COMPOSITE_FILTERS = 200;
+	private static final int TIMING_ROUNDS = 20;
+
+	private static final String[] NAMESPACES = {
+		"mirror:application:moodmap:mood",
+		"mirror:application:moodmap:note",
+		"mirror:application:ping:ping",
+		"mirror:application:a.b:c*d",
+		"urn:example:data"
+	};
+	private static final String[] PUBLISHERS = {
+		"alice@mirror-demo.eu/moodmap", "alice@mirror-demo.eu", "bob@mirror-demo.eu/ping", null
+	};
+	private static final String[] REFS = { "object-1", "object-2", null };
+	private static final String[] MODEL_VERSIONS = { "1.0", "1.1", "", null };
+	private static final String[] CDM_VERSIONS = { "0.1", "0.2", "1.0", "2.0", null };
+	private static final String PERIOD_FROM = "2013-05-01T10:00:00Z";
+	private static final String PERIOD_TO = "2013-05-31T10:00:00Z";
+	private static final String[] TIMESTAMPS = {
+		PERIOD_FROM,
+		"2013-05-01T12:00:00+02:00",
+		"2013-05-01T09:59:59.999Z",
+		PERIOD_TO,
+		"2013-05-31T10:00:00.001Z",
+		"2013-05-31T11:00:00+01:00",
+		"2013-05-15T00:00:00Z",
+		"2013-05-15T00:00:00",
+		"2012-01-01T00:00:00Z",
+		"2014-01-01T00:00:00Z",
+		"yesterday",
+		"",
+		null
+	};
+
+	private final Random random;
+
+	private FilterCompilerCheck(long seed) {
+		this.random = new Random(seed);
+	}
+
+	public static void main(String[] args) {
+		long seed = args.length > 0 ? Long.parseLong(args[0]) : 42L;
+		// the corpus contains invalid timestamps on purpose
+		LogManager.getLogManager().reset();
+		FilterCompilerCheck check = new FilterCompilerCheck(seed);
+		List<Element> corpus = check.createCorpus();
+		List<DataObjectFilter> filters = check.createFilters();
+		System.out.println("Seed " + seed + ": " + corpus.size() + " data objects, " + filters.size() + " filters.");
+		int mismatches = check.compareResults(corpus, filters);
+		System.out.println("Mismatches: " + mismatches);
+		check.compareTimings(corpus, filters);
+		if (mismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	private <T> T pick(T[] values) {
+		return values[random.nextInt(values.length)];
+	}
+
+	private List<Element> createCorpus() {
+		List<Element> corpus = new ArrayList<Element>(CORPUS_SIZE);
+		for (int i = 0; i < CORPUS_SIZE; i++) {
+			Element element = new Element("data", pick(NAMESPACES));
+			if (random.nextInt(10) > 0) {
+				element.setAttribute("id", "object-" + i);
+			}
+			setAttribute(element, "timestamp", pick(TIMESTAMPS));
+			setAttribute(element, "publisher", pick(PUBLISHERS));
+			setAttribute(element, "ref", pick(REFS));
+			setAttribute(element, "modelVersion", pick(MODEL_VERSIONS));
+			setAttribute(element, "cdmVersion", pick(CDM_VERSIONS));
+			corpus.add(element);
+		}
+		return corpus;
+	}
+
+	private static void setAttribute(Element element, String name, String value) {
+		if (value != null) {
+			element.setAttribute(name, value);
+		}
+	}
+
+	private static DataObject createDataObject(Element element) {
+		return new DataObjectBuilder(element.clone(), element.getNamespaceURI()).build();
+	}
+
+	private static Date parseDate(String dateTimeString) {
+		return DatatypeConverter.parseDateTime(dateTimeString).getTime();
+	}
+
+	private List<DataObjectFilter> createLeafFilters() {
+		Date from = parseDate(PERIOD_FROM);
+		Date to = parseDate(PERIOD_TO);
+		List<DataObjectFilter> filters = new ArrayList<DataObjectFilter>();
+		for (String namespace : NAMESPACES) {
+			filters.add(new NamespaceFilter(CompareType.STRICT, namespace));
+			filters.add(new DataModelFilter(namespace));
+			filters.add(new DataModelFilter(namespace, "1.0"));
+			filters.add(new DataModelFilter(namespace, "1.1"));
+		}
+		filters.add(new NamespaceFilter(CompareType.CONTAINS, "moodmap"));
+		filters.add(new NamespaceFilter(CompareType.CONTAINS, "c*d"));
+		filters.add(new NamespaceFilter(CompareType.REGEX, "mirror:application:.*"));
+		filters.add(new NamespaceFilter(CompareType.REGEX, ".*:(mood|ping)"));
+		filters.add(new NamespaceFilter(CompareType.REGEX, "mirror:application:a\\.b:c\\*d"));
+		filters.add(new NamespaceFilter(CompareType.REGEX, "moodmap"));
+		filters.add(new PublisherFilter("alice@mirror-demo.eu"));
+		filters.add(new PublisherFilter("alice@mirror-demo.eu/moodmap"));
+		filters.add(new PublisherFilter("bob"));
+		filters.add(new ReferencesFilter("object-1"));
+		filters.add(new ReferencesFilter("object-3"));
+		filters.add(new PeriodFilter(from, to));
+		filters.add(new PeriodFilter(from, null));
+		filters.add(new PeriodFilter(null, to));
+		filters.add(new PeriodFilter(from, from));
+		filters.add(new PeriodFilter(to, from));
+		return filters;
+	}
+
+	private DataObjectFilter createCompositeFilter(List<DataObjectFilter> leafFilters, int depth) {
+		if (depth == 0 || random.nextInt(3) == 0) {
+			return leafFilters.get(random.nextInt(leafFilters.size()));
+		}
+		int childCount = 1 + random.nextInt(4);
+		DataObjectFilter[] children = new DataObjectFilter[childCount];
+		for (int i = 0; i < childCount; i++) {
+			children[i] = createCompositeFilter(leafFilters, depth - 1);
+		}
+		return random.nextBoolean() ? new AndFilter(children) : new OrFilter(children);
+	}
+
+	private List<DataObjectFilter> createFilters() {
+		List<DataObjectFilter> leafFilters = createLeafFilters();
+		List<DataObjectFilter> filters = new ArrayList<DataObjectFilter>(leafFilters);
+		filters.add(new AndFilter());
+		filters.add(new OrFilter());
+		for (int i = 0; i < COMPOSITE_FILTERS; i++) {
+			filters.add(createCompositeFilter(leafFilters, 3));
+		}
+		return filters;
+	}
+
+	/**
+	 * Evaluates each filter with and without compilation. Fresh data objects are created for both evaluations,
+	 * so that values resolved on first access by one evaluation do not affect the other one.
+	 * @return Number of mismatching results.
+	 */
+	private int compareResults(List<Element> corpus, List<DataObjectFilter> filters) {
+		int mismatches = 0;
+		for (DataObjectFilter filter : filters) {
+			DataObjectFilter compiledFilter = FilterCompiler.compile(filter);
+			for (Element element : corpus) {
+				boolean expected = filter.isDataObjectValid(createDataObject(element));
+				boolean actual = compiledFilter.isDataObjectValid(createDataObject(element));
+				if (expected != actual) {
+					mismatches++;
+					if (mismatches <= 10) {
+						System.out.println("Mismatch for " + describe(filter) + ": expected " + expected + ", compiled " + actual + ", object: " + createDataObject(element));
+					}
+				}
+			}
+		}
+		return mismatches;
+	}
+
+	private void compareTimings(List<Element> corpus, List<DataObjectFilter> filters) {
+		List<DataObject> dataObjects = new ArrayList<DataObject>(corpus.size());
+		for (Element element : corpus) {
+			dataObjects.add(createDataObject(element));
+		}
+		List<DataObjectFilter> compiledFilters = new ArrayList<DataObjectFilter>(filters.size());
+		for (DataObjectFilter filter : filters) {
+			compiledFilters.add(FilterCompiler.compile(filter));
+		}
+		// warm up
+		evaluate(filters, dataObjects, TIMING_ROUNDS);
+		evaluate(compiledFilters, dataObjects, TIMING_ROUNDS);
+
+		long start = System.nanoTime();
+		int interpretedCount = evaluate(filters, dataObjects, TIMING_ROUNDS);
+		long interpretedTime = System.nanoTime() - start;
+		start = System.nanoTime();
+		int compiledCount = evaluate(compiledFilters, dataObjects, TIMING_ROUNDS);
+		long compiledTime = System.nanoTime() - start;
+
+		long evaluations = (long) TIMING_ROUNDS * filters.size() * dataObjects.size();
+		System.out.println("Evaluations: " + evaluations + " (" + interpretedCount + "/" + compiledCount + " valid)");
+		System.out.println("Interpreted: " + (interpretedTime / 1000000) + " ms, " + (interpretedTime / evaluations) + " ns per evaluation");
+		System.out.println("Compiled:    " + (compiledTime / 1000000) + " ms, " + (compiledTime / evaluations) + " ns per evaluation");
+	}
+
+	private static int evaluate(List<DataObjectFilter> filters, List<DataObject> dataObjects, int rounds) {
+		int validCount = 0;
+		for (int round = 0; round < rounds; round++) {
+			for (DataObjectFilter filter : filters) {
+				for (DataObject dataObject : dataObjects) {
+					if (filter.isDataObjectValid(dataObject)) {
+						validCount++;
+					}
+				}
+			}
+		}
+		return validCount;
+	}
+
+	private static String describe(DataObjectFilter filter) {
+		if (filter instanceof de.imc.mirror.sdk.filter.AndFilter || filter instanceof de.imc.mirror.sdk.filter.OrFilter) {
+			StringBuilder builder = new StringBuilder(filter instanceof de.imc.mirror.sdk.filter.AndFilter ? "AND(" : "OR(");
+			Set<DataObjectFilter> children = filter instanceof de.imc.mirror.sdk.filter.AndFilter ?
+					((de.imc.mirror.sdk.filter.AndFilter) filter).getFilters() : ((de.imc.mirror.sdk.filter.OrFilter) filter).getFilters();
+			boolean isFirst = true;
+			for (DataObjectFilter child : children) {
+				builder.append(isFirst ? "" : ", ").append(describe(child));
+				isFirst = false;
+			}
+			return builder.append(")").toString();
+		}
+		if (filter instanceof SerializableDataObjectFilter) {
+			return new XMLOutputter().outputString(((SerializableDataObjectFilter) filter).getFilterAsXML("query"));
+		}
+		return filter.toString();
+	}
+}